@@ -0,0 +1,81 @@
+package com.cap.nativehttp.utils;
+
+import static org.junit.Assert.*;
+
+import android.os.Build;
+import android.util.Base64;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Random;
+
+import okhttp3.RequestBody;
+import okio.Buffer;
+
+@RunWith(AndroidJUnit4.class)
+public class Base64StreamsTest {
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String wholeBufferEncode(byte[] bytes) {
+        int flags = Build.VERSION.SDK_INT < Build.VERSION_CODES.O ? Base64.DEFAULT : Base64.NO_WRAP;
+        return Base64.encodeToString(bytes, flags);
+    }
+
+    @Test
+    public void encode_matchesAWholeBufferEncodeAcrossChunkBoundaries() throws IOException {
+        for (int size : new int[]{0, 1, 2, 3, 57 * 1024 - 1, 57 * 1024, 57 * 1024 + 1, 300_000}) {
+            byte[] bytes = randomBytes(size);
+            assertEquals("size " + size, wholeBufferEncode(bytes), Base64Streams.encode(new Buffer().write(bytes), size));
+        }
+    }
+
+    @Test
+    public void encode_growsWhenTheLengthIsUnknownOrWrong() throws IOException {
+        byte[] bytes = randomBytes(200_000);
+        assertEquals(wholeBufferEncode(bytes), Base64Streams.encode(new Buffer().write(bytes), -1));
+        assertEquals(wholeBufferEncode(bytes), Base64Streams.encode(new Buffer().write(bytes), 10));
+    }
+
+    @Test
+    public void decodingRequestBody_roundTrips() throws IOException {
+        for (int size : new int[]{0, 1, 2, 3, 4 * 4096, 100_000}) {
+            byte[] bytes = randomBytes(size);
+            RequestBody body = Base64Streams.decodingRequestBody(Base64.encodeToString(bytes, Base64.NO_WRAP), null);
+            Buffer written = new Buffer();
+            body.writeTo(written);
+            assertEquals("size " + size, size, body.contentLength());
+            assertArrayEquals("size " + size, bytes, written.readByteArray());
+        }
+    }
+
+    @Test
+    public void decodingRequestBody_skipsLineBreaksAndAcceptsMissingPadding() throws IOException {
+        byte[] bytes = randomBytes(1000);
+        String wrapped = Base64.encodeToString(bytes, Base64.DEFAULT);
+        RequestBody body = Base64Streams.decodingRequestBody(wrapped, null);
+        Buffer written = new Buffer();
+        body.writeTo(written);
+        assertEquals(bytes.length, body.contentLength());
+        assertArrayEquals(bytes, written.readByteArray());
+
+        RequestBody unpadded = Base64Streams.decodingRequestBody("YWI", null);
+        Buffer decoded = new Buffer();
+        unpadded.writeTo(decoded);
+        assertEquals(2, unpadded.contentLength());
+        assertEquals("ab", decoded.readUtf8());
+    }
+
+    @Test(expected = IOException.class)
+    public void decodingRequestBody_rejectsInvalidInput() throws IOException {
+        Base64Streams.decodingRequestBody("!!!!", null).writeTo(new Buffer());
+    }
+}
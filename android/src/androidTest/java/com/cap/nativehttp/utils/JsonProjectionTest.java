@@ -0,0 +1,97 @@
+package com.cap.nativehttp.utils;
+
+import static org.junit.Assert.*;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import okio.Buffer;
+
+@RunWith(AndroidJUnit4.class)
+public class JsonProjectionTest {
+
+    private static final String DOCUMENT = "{"
+            + "\"id\": 7,"
+            + "\"big\": 12345678901234567890,"
+            + "\"ratio\": 0.5,"
+            + "\"ok\": true,"
+            + "\"none\": null,"
+            + "\"items\": [{\"name\": \"a\"}, {\"name\": \"b\"}],"
+            + "\"a/b\": 1,"
+            + "\"m~n\": 2,"
+            + "\"nested\": {\"deep\": {\"value\": \"x\"}}"
+            + "}";
+
+    private static Buffer source(String json) {
+        return new Buffer().writeUtf8(json);
+    }
+
+    @Test
+    public void read_buildsTheWholeDocument() throws Exception {
+        JSONObject document = (JSONObject) JsonProjection.read(source(DOCUMENT));
+        assertEquals(7L, document.get("id"));
+        assertEquals(0.5, document.getDouble("ratio"), 0);
+        assertTrue(document.getBoolean("ok"));
+        assertTrue(document.isNull("none"));
+        assertEquals("b", document.getJSONArray("items").getJSONObject(1).getString("name"));
+        // Too large for a long, read as a double
+        assertTrue(document.get("big") instanceof Double);
+    }
+
+    @Test
+    public void read_handlesTopLevelArraysAndScalars() throws Exception {
+        JSONArray array = (JSONArray) JsonProjection.read(source("[1, \"two\"]"));
+        assertEquals(2, array.length());
+        assertEquals("two", JsonProjection.read(source("\"two\"")));
+    }
+
+    @Test
+    public void select_keepsOnlyTheAddressedValues() throws Exception {
+        JSObject selected = JsonProjection.select(source(DOCUMENT), Arrays.asList("/id", "/items/1/name", "/nested/deep"));
+        assertEquals(3, selected.length());
+        assertEquals(7L, selected.get("/id"));
+        assertEquals("b", selected.getString("/items/1/name"));
+        assertEquals("x", selected.getJSONObject("/nested/deep").getString("value"));
+    }
+
+    @Test
+    public void select_unescapesPointerTokens() throws Exception {
+        JSObject selected = JsonProjection.select(source(DOCUMENT), Arrays.asList("/a~1b", "/m~0n"));
+        assertEquals(1L, selected.get("/a~1b"));
+        assertEquals(2L, selected.get("/m~0n"));
+    }
+
+    @Test
+    public void select_answersPointersInsideASelectedSubtree() throws Exception {
+        JSObject selected = JsonProjection.select(source(DOCUMENT), Arrays.asList("/nested", "/nested/deep/value"));
+        assertEquals("x", selected.getString("/nested/deep/value"));
+        assertTrue(selected.get("/nested") instanceof JSONObject);
+    }
+
+    @Test
+    public void select_leavesOutPointersThatMatchNothing() throws Exception {
+        JSObject selected = JsonProjection.select(source(DOCUMENT), Arrays.asList("/missing", "/items/5", "/id/x"));
+        assertEquals(0, selected.length());
+    }
+
+    @Test
+    public void select_emptyPointerIsTheWholeDocument() throws Exception {
+        JSObject selected = JsonProjection.select(source("[1, 2]"), Collections.singletonList(""));
+        assertEquals(2, selected.getJSONArray("").length());
+    }
+
+    @Test(expected = JSONException.class)
+    public void select_rejectsPointersWithoutLeadingSlash() throws Exception {
+        JsonProjection.select(source(DOCUMENT), Collections.singletonList("id"));
+    }
+}
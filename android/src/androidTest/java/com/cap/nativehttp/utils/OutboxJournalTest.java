@@ -0,0 +1,126 @@
+package com.cap.nativehttp.utils;
+
+import static org.junit.Assert.*;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.getcapacitor.JSObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import okio.BufferedSource;
+import okio.Okio;
+
+@RunWith(AndroidJUnit4.class)
+public class OutboxJournalTest {
+
+    private File file;
+    private OutboxJournal journal;
+
+    @Before
+    public void setUp() {
+        File directory = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(), "outbox-test");
+        file = new File(directory, "outbox.log");
+        file.delete();
+        journal = new OutboxJournal(file);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static OutboxJournal.Entry entry(String id) throws Exception {
+        JSObject options = new JSObject();
+        options.put("method", "POST");
+        options.put("body", "line one\nline two");
+        return new OutboxJournal.Entry(id, "https://example.com/items/" + id, options);
+    }
+
+    private static String contents(File file) throws IOException {
+        try (BufferedSource source = Okio.buffer(Okio.source(file))) {
+            return source.readUtf8();
+        }
+    }
+
+    @Test
+    public void read_withoutAJournalIsEmpty() {
+        assertTrue(journal.read().isEmpty());
+    }
+
+    @Test
+    public void read_replaysQueuedEntriesInOrder() throws Exception {
+        journal.appendAdd(entry("a"));
+        journal.appendAdd(entry("b"));
+        journal.appendAdd(entry("c"));
+
+        List<OutboxJournal.Entry> pending = new OutboxJournal(file).read();
+        assertEquals(3, pending.size());
+        assertEquals("a", pending.get(0).id);
+        assertEquals("c", pending.get(2).id);
+        assertEquals("https://example.com/items/b", pending.get(1).url);
+        // Line breaks in the options survive the line-based format
+        assertEquals("line one\nline two", pending.get(1).options.getString("body"));
+    }
+
+    @Test
+    public void read_leavesOutEntriesMarkedDone() throws Exception {
+        journal.appendAdd(entry("a"));
+        journal.appendAdd(entry("b"));
+        journal.appendDone("a");
+
+        List<OutboxJournal.Entry> pending = new OutboxJournal(file).read();
+        assertEquals(1, pending.size());
+        assertEquals("b", pending.get(0).id);
+    }
+
+    @Test
+    public void read_skipsATornLastLine() throws Exception {
+        journal.appendAdd(entry("a"));
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write("A\tb\thttps://exam".getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<OutboxJournal.Entry> pending = journal.read();
+        assertEquals(1, pending.size());
+        assertEquals("a", pending.get(0).id);
+    }
+
+    @Test
+    public void rewrite_keepsOnlyPendingEntries() throws Exception {
+        journal.appendAdd(entry("a"));
+        journal.appendAdd(entry("b"));
+        journal.appendDone("a");
+
+        journal.rewrite(journal.read());
+
+        String compacted = contents(file);
+        assertFalse(compacted.contains("\ta\t"));
+        assertFalse(compacted.startsWith("D"));
+        List<OutboxJournal.Entry> pending = journal.read();
+        assertEquals(1, pending.size());
+        assertEquals("b", pending.get(0).id);
+    }
+
+    @Test
+    public void rewrite_withNothingPendingEmptiesTheJournal() throws Exception {
+        journal.appendAdd(entry("a"));
+        journal.appendDone("a");
+
+        journal.rewrite(Collections.emptyList());
+
+        assertEquals("", contents(file));
+        assertTrue(journal.read().isEmpty());
+    }
+}
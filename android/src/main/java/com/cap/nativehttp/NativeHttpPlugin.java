@@ -2,11 +2,21 @@ package com.cap.nativehttp;
 
 import android.content.Context;
 
+import com.cap.nativehttp.utils.BatchFetcher;
+import com.cap.nativehttp.utils.CertificateStore;
 import com.cap.nativehttp.utils.CookieManager;
+import com.cap.nativehttp.utils.CookiePersistence;
+import com.cap.nativehttp.utils.FetchCallback;
 import com.cap.nativehttp.utils.ForwardingCookieHandler;
 import com.cap.nativehttp.utils.HttpFetcher;
+import com.cap.nativehttp.utils.MetricsRegistry;
+import com.cap.nativehttp.utils.OfflineOutbox;
 import com.cap.nativehttp.utils.OkHttpUtils;
+import com.cap.nativehttp.utils.OutboxJournal;
+import com.cap.nativehttp.utils.ResponseFileStore;
+import com.cap.nativehttp.utils.ResponseStreamer;
 import com.cap.nativehttp.utils.TempFileManager;
+import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
@@ -14,25 +24,58 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 
 import org.json.JSONException;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 
 @CapacitorPlugin(name = "NativeHttp")
 public class NativeHttpPlugin extends Plugin {
     private CookieManager cookieManager;
     private HttpFetcher httpFetcher;
+    private BatchFetcher batchFetcher;
+    private OfflineOutbox outbox;
+    private static final long ORPHANED_UPLOADS_MAX_BYTES = 50L * 1024 * 1024;
+    private static final int DEFAULT_RESPONSE_FILES_MAX_BYTES = 100 * 1024 * 1024;
 
     @Override
     public void load() {
         super.load();
         Context mContext = getBridge().getContext();
-        cookieManager = new CookieManager(new ForwardingCookieHandler(mContext));
-        httpFetcher = new HttpFetcher(mContext, cookieManager);
+        CookiePersistence cookiePersistence = getConfig().getBoolean("persistCookies", true)
+                ? new CookiePersistence(new File(mContext.getFilesDir(), "nativehttp/cookies.log"))
+                : null;
+        cookieManager = new CookieManager(new ForwardingCookieHandler(mContext), cookiePersistence);
+        cookieManager.setSyncToWebView(getConfig().getBoolean("syncCookiesToWebView", true));
+        File cacheDir = mContext.getCacheDir();
+        ResponseFileStore responseFiles = new ResponseFileStore(
+                new File(cacheDir, "nativehttp-responses"),
+                getConfig().getInt("responseFilesMaxBytes", DEFAULT_RESPONSE_FILES_MAX_BYTES),
+                getBridge().getLocalUrl()
+        );
+        httpFetcher = new HttpFetcher(mContext, cookieManager, this::notifyListeners, responseFiles);
+        batchFetcher = new BatchFetcher(httpFetcher, this::notifyListeners);
+        outbox = new OfflineOutbox(
+                mContext,
+                new OutboxJournal(new File(mContext.getFilesDir(), "nativehttp/outbox.log")),
+                httpFetcher,
+                this::notifyListeners
+        );
+        httpFetcher.setOutbox(outbox);
+        outbox.start();
+        OkHttpUtils.setCacheDirectory(new File(cacheDir, "nativehttp-cache"));
+        new Thread(() -> TempFileManager.cleanupOrphans(cacheDir, ORPHANED_UPLOADS_MAX_BYTES), "NativeHttp-temp-janitor").start();
+
+        String[] prewarmCerts = getConfig().getArray("prewarmCerts");
+        if (prewarmCerts != null) {
+            CertificateStore.prewarm(Arrays.asList(prewarmCerts));
+        }
     }
 
     @Override
     protected void handleOnDestroy() {
         super.handleOnDestroy();
+        outbox.stop();
         TempFileManager.cleanup();
     }
 
@@ -49,6 +92,106 @@ public class NativeHttpPlugin extends Plugin {
         }
     }
 
+    @PluginMethod
+    public void configure(PluginCall call) {
+        try {
+            OkHttpUtils.configure(call.getData());
+            call.resolve();
+        } catch (JSONException e) {
+            call.reject("Invalid configuration", e.getMessage());
+        } catch (Exception e) {
+            call.reject("Unexpected error occurred : ", e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void preconnect(PluginCall call) {
+        try {
+            httpFetcher.preconnect(call.getString("url"), call.getObject("options", new JSObject()), FetchCallback.of(call));
+        } catch (JSONException e) {
+            call.reject("Invalid request JSON", e.getMessage());
+        } catch (Exception e) {
+            call.reject("Unexpected error occurred : ", e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void fetchBatch(PluginCall call) {
+        try {
+            batchFetcher.fetchBatch(call);
+        } catch (JSONException e) {
+            call.reject("Invalid request JSON", e.getMessage());
+        } catch (Exception e) {
+            call.reject("Unexpected error occurred : ", e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void getMetricsSnapshot(PluginCall call) {
+        call.resolve(MetricsRegistry.snapshot(call.getBoolean("reset", false)));
+    }
+
+    @PluginMethod
+    public void streamAck(PluginCall call) {
+        String requestId = call.getString("requestId");
+        if (requestId == null) {
+            call.reject("requestId is required");
+            return;
+        }
+        JSObject result = new JSObject();
+        result.put("active", ResponseStreamer.acknowledge(requestId, call.getInt("count", 1)));
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void cancelStream(PluginCall call) {
+        String requestId = call.getString("requestId");
+        if (requestId == null) {
+            call.reject("requestId is required");
+            return;
+        }
+        JSObject result = new JSObject();
+        result.put("cancelled", ResponseStreamer.cancel(requestId));
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void cancel(PluginCall call) {
+        String requestId = call.getString("requestId");
+        if (requestId == null) {
+            call.reject("requestId is required");
+            return;
+        }
+        JSObject result = new JSObject();
+        result.put("cancelled", httpFetcher.cancel(requestId));
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void cancelAll(PluginCall call) {
+        String tag = call.getString("tag");
+        if (tag == null) {
+            call.reject("tag is required");
+            return;
+        }
+        JSObject result = new JSObject();
+        result.put("cancelled", httpFetcher.cancelAll(tag));
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void getOutbox(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("entries", outbox.list());
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void flushOutbox(PluginCall call) {
+        outbox.replay();
+        call.resolve();
+    }
+
     @PluginMethod
     public void getCookies(PluginCall call) {
         try {
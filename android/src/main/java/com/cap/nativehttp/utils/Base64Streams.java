@@ -0,0 +1,148 @@
+// Base64Streams.java
+package com.cap.nativehttp.utils;
+
+import android.os.Build;
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+
+/**
+ * Chunked base64 conversions that never hold the decoded payload in full.
+ */
+public class Base64Streams {
+
+    // A multiple of both 3 (base64 group) and 57 (one 76 character line), so chunks concatenate
+    // to exactly the output of a single whole-buffer encode, including DEFAULT line wrapping.
+    private static final int ENCODE_CHUNK_BYTES = 57 * 1024;
+    // A multiple of 4 base64 characters
+    private static final int DECODE_CHUNK_CHARS = 4 * 4096;
+
+    /**
+     * Encodes everything remaining in the source into a base64 string, reading the body one chunk
+     * at a time. The output collects as ASCII bytes in an array sized up front from the content
+     * length, half the size of a UTF-16 builder, and becomes a string once at the end. That final
+     * copy briefly holds the array and the string together, about 2.7 times the payload, because a
+     * Java string cannot be built in place; the raw body itself is never held in full.
+     */
+    public static String encode(BufferedSource source, long contentLength) throws IOException {
+        int flags = Build.VERSION.SDK_INT < Build.VERSION_CODES.O ? Base64.DEFAULT : Base64.NO_WRAP;
+        byte[] output = new byte[estimateEncodedLength(contentLength, flags)];
+        int length = 0;
+        byte[] chunk = new byte[ENCODE_CHUNK_BYTES];
+        int read;
+        while ((read = fill(source, chunk)) > 0) {
+            byte[] encoded = Base64.encode(chunk, 0, read, flags);
+            if (length + encoded.length > output.length) {
+                // Only without a usable Content-Length, for example after transparent decompression
+                int grown = (int) Math.min((long) output.length * 2, Integer.MAX_VALUE - 8);
+                output = Arrays.copyOf(output, Math.max(length + encoded.length, grown));
+            }
+            System.arraycopy(encoded, 0, output, length, encoded.length);
+            length += encoded.length;
+        }
+        return new String(output, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return a request body that decodes the base64 string while it is written to the network
+     */
+    public static RequestBody decodingRequestBody(String base64, @Nullable MediaType contentType) {
+        return new DecodingRequestBody(base64, contentType);
+    }
+
+    private static int estimateEncodedLength(long contentLength, int flags) {
+        if (contentLength <= 0) return 16;
+        long length = (contentLength + 2) / 3 * 4;
+        if (flags == Base64.DEFAULT) {
+            length += length / 76 + 1;
+        }
+        return (int) Math.min(length, Integer.MAX_VALUE - 8);
+    }
+
+    private static int fill(BufferedSource source, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = source.read(buffer, total, buffer.length - total);
+            if (read == -1) break;
+            total += read;
+        }
+        return total;
+    }
+
+    private static boolean isBase64Whitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private static final class DecodingRequestBody extends RequestBody {
+        private final String base64;
+        @Nullable
+        private final MediaType contentType;
+        private final long contentLength;
+
+        DecodingRequestBody(String base64, @Nullable MediaType contentType) {
+            this.base64 = base64;
+            this.contentType = contentType;
+            this.contentLength = decodedLength(base64);
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return contentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public void writeTo(@NonNull BufferedSink sink) throws IOException {
+            byte[] chars = new byte[DECODE_CHUNK_CHARS];
+            int count = 0;
+            try {
+                for (int i = 0, length = base64.length(); i < length; i++) {
+                    char c = base64.charAt(i);
+                    if (isBase64Whitespace(c)) continue;
+                    chars[count++] = (byte) c;
+                    if (count == chars.length) {
+                        sink.write(Base64.decode(chars, 0, count, Base64.DEFAULT));
+                        count = 0;
+                    }
+                }
+                if (count > 0) {
+                    sink.write(Base64.decode(chars, 0, count, Base64.DEFAULT));
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid base64 file data", e);
+            }
+        }
+
+        private static long decodedLength(String base64) {
+            long characters = 0;
+            int padding = 0;
+            for (int i = 0, length = base64.length(); i < length; i++) {
+                char c = base64.charAt(i);
+                if (isBase64Whitespace(c)) continue;
+                if (c == '=') {
+                    padding++;
+                } else {
+                    characters++;
+                }
+            }
+            // Padding only completes the final group; unpadded input decodes the same way
+            long remainder = characters % 4;
+            return characters / 4 * 3 + (remainder == 0 ? 0 : remainder - 1);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+// BatchFetcher.java
+package com.cap.nativehttp.utils;
+
+import androidx.annotation.Nullable;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many fetches from a single bridge call. Items keep their own options, including pinning,
+ * and go through {@link HttpFetcher} on the shared dispatcher with at most {@code concurrency}
+ * of them in flight. Results come back together, or one {@code batchItem} event per item.
+ */
+public class BatchFetcher {
+
+    public static final String EVENT_ITEM = "batchItem";
+    private static final int DEFAULT_CONCURRENCY = 6;
+
+    private final HttpFetcher httpFetcher;
+    private final PluginEventEmitter eventEmitter;
+
+    public BatchFetcher(HttpFetcher httpFetcher, PluginEventEmitter eventEmitter) {
+        this.httpFetcher = httpFetcher;
+        this.eventEmitter = eventEmitter;
+    }
+
+    public void fetchBatch(PluginCall call) throws JSONException {
+        JSArray requests = call.getArray("requests");
+        if (requests == null) {
+            call.reject("requests is required");
+            return;
+        }
+        String batchId = call.getString("batchId", UUID.randomUUID().toString());
+        boolean emitEvents = "events".equals(call.getString("mode", "all"));
+        int concurrency = Math.max(1, call.getInt("concurrency", DEFAULT_CONCURRENCY));
+
+        new Batch(call, requests, batchId, emitEvents, concurrency).start();
+    }
+
+    private final class Batch {
+        private final PluginCall call;
+        private final JSArray requests;
+        private final String batchId;
+        private final boolean emitEvents;
+        private final int concurrency;
+        private final JSObject[] results;
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final AtomicInteger failed = new AtomicInteger();
+
+        Batch(PluginCall call, JSArray requests, String batchId, boolean emitEvents, int concurrency) {
+            this.call = call;
+            this.requests = requests;
+            this.batchId = batchId;
+            this.emitEvents = emitEvents;
+            this.concurrency = concurrency;
+            this.results = new JSObject[requests.length()];
+            this.remaining = new AtomicInteger(requests.length());
+        }
+
+        void start() {
+            if (results.length == 0) {
+                finish();
+                return;
+            }
+            for (int i = 0; i < Math.min(concurrency, results.length); i++) {
+                startNext();
+            }
+        }
+
+        private void startNext() {
+            int index = nextIndex.getAndIncrement();
+            if (index >= results.length) return;
+            try {
+                JSONObject item = requests.getJSONObject(index);
+                JSObject options = JSObject.fromJSONObject(item.optJSONObject("options") != null ? item.getJSONObject("options") : new JSONObject());
+                httpFetcher.fetch(item.getString("url"), options, new FetchCallback() {
+                    @Override
+                    public void resolve(JSObject response) {
+                        complete(index, response, null, null);
+                    }
+
+                    @Override
+                    public void reject(String message, @Nullable String code) {
+                        complete(index, null, message, code);
+                    }
+                });
+            } catch (Exception e) {
+                complete(index, null, "Unexpected error occurred : ", e.getMessage());
+            }
+        }
+
+        private void complete(int index, @Nullable JSObject response, @Nullable String message, @Nullable String code) {
+            JSObject result = new JSObject();
+            result.put("index", index);
+            result.put("ok", response != null);
+            if (response != null) {
+                result.put("response", response);
+            } else {
+                failed.incrementAndGet();
+                JSObject error = new JSObject();
+                error.put("message", message);
+                error.put("code", code);
+                result.put("error", error);
+            }
+
+            if (emitEvents) {
+                result.put("batchId", batchId);
+                eventEmitter.emit(EVENT_ITEM, result);
+            } else {
+                results[index] = result;
+            }
+
+            if (remaining.decrementAndGet() == 0) {
+                finish();
+            } else {
+                startNext();
+            }
+        }
+
+        private void finish() {
+            JSObject summary = new JSObject();
+            summary.put("batchId", batchId);
+            summary.put("count", results.length);
+            summary.put("failed", failed.get());
+            if (!emitEvents) {
+                JSArray items = new JSArray();
+                for (JSObject result : results) {
+                    items.put(result);
+                }
+                summary.put("results", items);
+            }
+            call.resolve(summary);
+        }
+    }
+}
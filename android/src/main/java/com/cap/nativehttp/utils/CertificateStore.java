@@ -0,0 +1,151 @@
+// CertificateStore.java
+package com.cap.nativehttp.utils;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Loads pinned certificates from {@code assets/<name>.cer} once and caches the trust manager and
+ * socket factory built for each certificate set, so a new client never repeats asset I/O or parsing.
+ */
+public class CertificateStore {
+
+    private static final String TAG = "CertificateStore";
+    private static final ConcurrentHashMap<String, Certificate> certificatesByName = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, FutureTask<PinnedTrust>> trustByFingerprint = new ConcurrentHashMap<>();
+
+    /**
+     * Trust manager and socket factory pair that only accepts chains anchored in a pinned certificate set.
+     */
+    public static final class PinnedTrust {
+        private final X509TrustManager trustManager;
+        private final SSLSocketFactory socketFactory;
+
+        PinnedTrust(X509TrustManager trustManager, SSLSocketFactory socketFactory) {
+            this.trustManager = trustManager;
+            this.socketFactory = socketFactory;
+        }
+
+        public X509TrustManager getTrustManager() {
+            return trustManager;
+        }
+
+        public SSLSocketFactory getSocketFactory() {
+            return socketFactory;
+        }
+    }
+
+    public static PinnedTrust getPinnedTrust(List<String> certs) throws CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException, KeyManagementException {
+        String fingerprint = fingerprint(certs);
+        FutureTask<PinnedTrust> task = trustByFingerprint.get(fingerprint);
+        if (task == null) {
+            FutureTask<PinnedTrust> newTask = new FutureTask<>(() -> buildPinnedTrust(certs));
+            task = trustByFingerprint.putIfAbsent(fingerprint, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading pinned certificates " + certs, e);
+        } catch (ExecutionException e) {
+            trustByFingerprint.remove(fingerprint, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof CertificateException) throw (CertificateException) cause;
+            if (cause instanceof NoSuchAlgorithmException) throw (NoSuchAlgorithmException) cause;
+            if (cause instanceof KeyStoreException) throw (KeyStoreException) cause;
+            if (cause instanceof KeyManagementException) throw (KeyManagementException) cause;
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException("Failed to load pinned certificates " + certs, cause);
+        }
+    }
+
+    /**
+     * Parses the given certificate set on a background thread so the first pinned request finds it ready.
+     */
+    public static void prewarm(List<String> certs) {
+        if (certs == null || certs.isEmpty()) return;
+        List<String> copy = new ArrayList<>(certs);
+        Thread thread = new Thread(() -> {
+            try {
+                getPinnedTrust(copy);
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to prewarm pinned certificates " + copy, e);
+            }
+        }, "NativeHttp-cert-prewarm");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static String fingerprint(List<String> certs) {
+        List<String> sorted = new ArrayList<>(certs);
+        Collections.sort(sorted);
+        return String.join("\n", sorted);
+    }
+
+    private static PinnedTrust buildPinnedTrust(List<String> certs) throws NoSuchAlgorithmException, CertificateException, KeyStoreException, IOException, KeyManagementException {
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        keyStore.load(null, null);
+        for (String filename : certs) {
+            keyStore.setCertificateEntry(filename, getCertificate(filename));
+        }
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+
+        TrustManager[] trustManagers = tmf.getTrustManagers();
+        if (trustManagers.length != 1 || !(trustManagers[0] instanceof X509TrustManager)) {
+            throw new IllegalStateException("Unexpected default trust managers:" + Arrays.toString(trustManagers));
+        }
+        X509TrustManager trustManager = (X509TrustManager) trustManagers[0];
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[]{trustManager}, null);
+        return new PinnedTrust(trustManager, sslContext.getSocketFactory());
+    }
+
+    private static Certificate getCertificate(String filename) throws CertificateException, IOException {
+        Certificate cached = certificatesByName.get(filename);
+        if (cached != null) return cached;
+
+        InputStream resource = Objects.requireNonNull(CertificateStore.class.getClassLoader()).getResourceAsStream("assets/" + filename + ".cer");
+        if (resource == null) {
+            throw new FileNotFoundException("Certificate not found: assets/" + filename + ".cer");
+        }
+        Certificate ca;
+        try (InputStream caInput = new BufferedInputStream(resource)) {
+            ca = CertificateFactory.getInstance("X.509").generateCertificate(caInput);
+        }
+        Certificate existing = certificatesByName.putIfAbsent(filename, ca);
+        return existing != null ? existing : ca;
+    }
+}
@@ -0,0 +1,104 @@
+// ClientProfile.java
+package com.cap.nativehttp.utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Canonical description of everything that changes how an OkHttpClient is built.
+ * Two requests with equal profiles can safely share the same client. Timeouts are not part of the
+ * profile because they are applied per call, see {@link TimeoutInterceptor}.
+ */
+public final class ClientProfile {
+
+    public enum PinningMode {
+        CERTIFICATE,
+        PUBLIC_KEY,
+        NONE,
+        TRUST_ALL
+    }
+
+    private final String domain;
+    private final PinningMode pinningMode;
+    private final List<String> certs;
+    private final boolean followRedirects;
+    private final boolean debugLogging;
+    private final long cacheSize;
+    private final int hashCode;
+
+    public ClientProfile(String domain, PinningMode pinningMode, List<String> certs, boolean followRedirects, boolean debugLogging, long cacheSize) {
+        List<String> sortedCerts = new ArrayList<>(certs != null ? certs : Collections.emptyList());
+        Collections.sort(sortedCerts);
+        this.domain = domain;
+        this.pinningMode = pinningMode;
+        this.certs = Collections.unmodifiableList(sortedCerts);
+        this.followRedirects = followRedirects;
+        this.debugLogging = debugLogging;
+        this.cacheSize = cacheSize;
+        this.hashCode = Objects.hash(domain, pinningMode, this.certs, followRedirects, debugLogging, cacheSize);
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public PinningMode getPinningMode() {
+        return pinningMode;
+    }
+
+    public List<String> getCerts() {
+        return certs;
+    }
+
+    public boolean isFollowRedirects() {
+        return followRedirects;
+    }
+
+    public boolean isDebugLogging() {
+        return debugLogging;
+    }
+
+    /**
+     * @return the maximum size in bytes of the profile's HTTP disk cache, or 0 when caching is disabled
+     */
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Identifies the security settings and the cache size, so variants that differ only in logging
+     * share one cache directory, and every requested size gets a cache that really has that size.
+     */
+    public String getCacheKey() {
+        return domain + "|" + pinningMode + "|" + certs + "|" + followRedirects + "|" + cacheSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ClientProfile)) return false;
+        ClientProfile that = (ClientProfile) o;
+        return followRedirects == that.followRedirects
+                && debugLogging == that.debugLogging
+                && cacheSize == that.cacheSize
+                && pinningMode == that.pinningMode
+                && Objects.equals(domain, that.domain)
+                && certs.equals(that.certs);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ClientProfile{" + domain + ", " + pinningMode + ", " + certs
+                + ", followRedirects=" + followRedirects + "}";
+    }
+}
@@ -0,0 +1,82 @@
+// CompressedRequestBody.java
+package com.cap.nativehttp.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.DeflaterSink;
+import okio.ForwardingSink;
+import okio.GzipSink;
+import okio.Okio;
+import okio.Sink;
+
+/**
+ * Compresses another request body while it is written, so the compressed form is never held in
+ * memory. The compressed length is unknown up front and the body is sent chunked.
+ */
+public class CompressedRequestBody extends RequestBody {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private final RequestBody delegate;
+    private final String encoding;
+
+    public CompressedRequestBody(RequestBody delegate, String encoding) {
+        if (!isSupported(encoding)) {
+            throw new IllegalArgumentException("Unsupported request encoding: " + encoding);
+        }
+        this.delegate = delegate;
+        this.encoding = encoding;
+    }
+
+    public static boolean isSupported(String encoding) {
+        return GZIP.equals(encoding) || DEFLATE.equals(encoding);
+    }
+
+    /**
+     * @return the value for the request's {@code Content-Encoding} header
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    @Nullable
+    @Override
+    public MediaType contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean isOneShot() {
+        return delegate.isOneShot();
+    }
+
+    @Override
+    public void writeTo(@NonNull BufferedSink sink) throws IOException {
+        // Closing the compressor writes its trailer, but the sink itself belongs to the caller
+        Sink unclosable = new ForwardingSink(sink) {
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        Sink compressor = GZIP.equals(encoding)
+                ? new GzipSink(unclosable)
+                : new DeflaterSink(unclosable, new Deflater(Deflater.DEFAULT_COMPRESSION));
+        try (BufferedSink compressed = Okio.buffer(compressor)) {
+            delegate.writeTo(compressed);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+// ContentUriRequestBody.java
+package com.cap.nativehttp.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Request body that streams straight from a {@link ContentResolver} URI, so uploads never copy the
+ * content into a temp file first. The length comes from the provider's {@link AssetFileDescriptor}
+ * when it is known; otherwise the body is sent with chunked transfer encoding.
+ */
+public class ContentUriRequestBody extends RequestBody {
+
+    private final ContentResolver contentResolver;
+    private final Uri uri;
+    @Nullable
+    private final MediaType contentType;
+    private final long contentLength;
+
+    private ContentUriRequestBody(ContentResolver contentResolver, Uri uri, @Nullable MediaType contentType, long contentLength) {
+        this.contentResolver = contentResolver;
+        this.uri = uri;
+        this.contentType = contentType;
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * @return a streaming body for the URI, or {@code null} when the provider cannot be opened as a
+     * descriptor and the caller should fall back to copying the content.
+     */
+    @Nullable
+    public static ContentUriRequestBody create(Context context, Uri uri, @Nullable MediaType contentType) {
+        ContentResolver resolver = context.getContentResolver();
+        long length;
+        try (AssetFileDescriptor descriptor = resolver.openAssetFileDescriptor(uri, "r")) {
+            if (descriptor == null) return null;
+            length = descriptor.getLength();
+        } catch (IOException | SecurityException | IllegalArgumentException | UnsupportedOperationException e) {
+            return null;
+        }
+        return new ContentUriRequestBody(resolver, uri, contentType, length == AssetFileDescriptor.UNKNOWN_LENGTH ? -1 : length);
+    }
+
+    @Nullable
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public void writeTo(@NonNull BufferedSink sink) throws IOException {
+        // Reopened on every write so OkHttp can retry or follow redirects with the same body
+        InputStream input = contentResolver.openInputStream(uri);
+        if (input == null) {
+            throw new FileNotFoundException("Unable to open " + uri);
+        }
+        try (Source source = Okio.source(input)) {
+            sink.writeAll(source);
+        }
+    }
+}
@@ -2,10 +2,8 @@ package com.cap.nativehttp.utils;
 
 // CookieManager.java
 
-import android.os.Build;
-
 import androidx.annotation.NonNull;
-import androidx.annotation.RequiresApi;
+import androidx.annotation.Nullable;
 
 import com.getcapacitor.JSObject;
 import com.getcapacitor.PluginCall;
@@ -16,58 +14,214 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import okhttp3.Cookie;
 import okhttp3.CookieJar;
 import okhttp3.HttpUrl;
 
 public class CookieManager implements CookieJar {
-    private final Map<String, List<Cookie>> cookieStore = new HashMap<>();
+    // Cookies indexed by registrable domain (eTLD+1). Each bucket is an immutable list that is
+    // replaced as a whole, so readers never lock and never see a list that is being modified.
+    private final ConcurrentHashMap<String, List<Cookie>> cookieStore = new ConcurrentHashMap<>();
     private final ForwardingCookieHandler cookieHandler;
+    private volatile boolean syncToWebView = true;
+    private static final int COMPACT_AFTER_WRITES = 500;
+    @Nullable
+    private final CookiePersistence persistence;
+    // Persisted records of registrable domains that have not been used yet in this process
+    @Nullable
+    private volatile ConcurrentHashMap<String, List<CookiePersistence.Record>> persisted;
+    private final AtomicInteger writesSinceCompaction = new AtomicInteger();
 
     public CookieManager(ForwardingCookieHandler cookieHandler) {
+        this(cookieHandler, null);
+    }
+
+    public CookieManager(ForwardingCookieHandler cookieHandler, @Nullable CookiePersistence persistence) {
         this.cookieHandler = cookieHandler;
+        this.persistence = persistence;
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
-    public synchronized void saveFromResponse(@NonNull HttpUrl httpUrl, @NonNull List<Cookie> cookies) {
+    public void saveFromResponse(@NonNull HttpUrl httpUrl, @NonNull List<Cookie> cookies) {
+        List<String> setCookieHeaders = new ArrayList<>(cookies.size());
         for (Cookie cookie : cookies) {
-            setCookie(httpUrl, cookie);
+            setCookie(cookie);
+            setCookieHeaders.add(cookie.toString());
+        }
+        // One batch per response, the handler writes and flushes the WebView store off this thread
+        if (syncToWebView && !setCookieHeaders.isEmpty()) {
+            cookieHandler.addCookies(httpUrl.toString(), setCookieHeaders);
         }
     }
 
+    /**
+     * Enables or disables mirroring cookies received by native requests into the WebView cookie store.
+     */
+    public void setSyncToWebView(boolean syncToWebView) {
+        this.syncToWebView = syncToWebView;
+    }
+
     @NonNull
     @Override
-    public synchronized List<Cookie> loadForRequest(@NonNull HttpUrl httpUrl) {
-        List<Cookie> cookies = cookieStore.get(httpUrl.host());
-        return cookies != null ? cookies : new ArrayList<>();
+    public List<Cookie> loadForRequest(@NonNull HttpUrl httpUrl) {
+        String key = storeKey(httpUrl.host());
+        hydrate(key);
+        List<Cookie> bucket = cookieStore.get(key);
+        if (bucket == null || bucket.isEmpty()) return Collections.emptyList();
+
+        long now = System.currentTimeMillis();
+        List<Cookie> matching = new ArrayList<>();
+        boolean hasExpired = false;
+        for (Cookie cookie : bucket) {
+            if (cookie.expiresAt() <= now) {
+                hasExpired = true;
+            } else if (cookie.matches(httpUrl)) {
+                matching.add(cookie);
+            }
+        }
+        if (hasExpired) {
+            evictExpired(key, now);
+        }
+        return Collections.unmodifiableList(matching);
+    }
+
+    private void setCookie(Cookie cookie) {
+        String key = storeKey(cookie.domain());
+        hydrate(key);
+        merge(key, Collections.singletonList(cookie), true);
+        if (persistence != null) {
+            persistence.appendSet(key, "https://" + cookie.domain() + cookie.path(), cookie.toString());
+            if (writesSinceCompaction.incrementAndGet() >= COMPACT_AFTER_WRITES) {
+                writesSinceCompaction.set(0);
+                persistence.execute(this::compact);
+            }
+        }
+    }
+
+    /**
+     * Adds cookies to a bucket. When {@code replaceExisting} is set they supersede stored cookies
+     * with the same name, domain and path; otherwise stored cookies win, which is how persisted
+     * cookies are merged under cookies that already arrived in this process.
+     */
+    private void merge(String key, List<Cookie> incoming, boolean replaceExisting) {
+        long now = System.currentTimeMillis();
+        while (true) {
+            List<Cookie> current = cookieStore.get(key);
+            List<Cookie> updated = new ArrayList<>();
+            if (current != null) {
+                for (Cookie existing : current) {
+                    if (existing.expiresAt() > now && !(replaceExisting && containsSameCookie(incoming, existing))) {
+                        updated.add(existing);
+                    }
+                }
+            }
+            for (Cookie cookie : incoming) {
+                // A Set-Cookie that is already expired is how servers delete cookies
+                if (cookie.expiresAt() > now && (replaceExisting || !containsSameCookie(updated, cookie))) {
+                    updated.add(cookie);
+                }
+            }
+            if (replaceBucket(key, current, updated)) return;
+        }
+    }
+
+    // RFC 6265 5.3 step 11: a cookie with the same name, domain and path replaces the old one
+    private static boolean containsSameCookie(List<Cookie> cookies, Cookie cookie) {
+        for (Cookie candidate : cookies) {
+            if (candidate.name().equals(cookie.name())
+                    && candidate.domain().equals(cookie.domain())
+                    && candidate.path().equals(cookie.path())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Loads the persisted cookies of one registrable domain into memory the first time it is used.
+     */
+    private void hydrate(String key) {
+        if (persistence == null) return;
+        List<CookiePersistence.Record> records = persistedRecords().remove(key);
+        if (records == null) return;
+
+        List<Cookie> restored = new ArrayList<>();
+        for (CookiePersistence.Record record : records) {
+            HttpUrl url = HttpUrl.parse(record.url);
+            Cookie cookie = url != null ? Cookie.parse(url, record.setCookie) : null;
+            if (cookie == null) continue;
+            for (int i = restored.size() - 1; i >= 0; i--) {
+                if (containsSameCookie(Collections.singletonList(restored.get(i)), cookie)) restored.remove(i);
+            }
+            restored.add(cookie);
+        }
+        merge(key, restored, false);
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.N)
-    private void setCookie(HttpUrl url, Cookie cookie) {
-        String host = url.host();
-        List<Cookie> cookieList = null;
-        cookieList = cookieStore.computeIfAbsent(host, k -> new ArrayList<>());
+    private void hydrateAll() {
+        if (persistence == null) return;
+        for (String key : persistedRecords().keySet()) {
+            hydrate(key);
+        }
+    }
 
-        cookieList.removeIf(existingCookie -> existingCookie.name().equals(cookie.name()) && existingCookie.path().equals(cookie.path()));
-        cookieList.add(cookie);
+    /**
+     * Reads the persisted log once, on the first request that needs it.
+     */
+    private ConcurrentHashMap<String, List<CookiePersistence.Record>> persistedRecords() {
+        ConcurrentHashMap<String, List<CookiePersistence.Record>> records = persisted;
+        if (records == null) {
+            synchronized (this) {
+                records = persisted;
+                if (records == null) {
+                    records = new ConcurrentHashMap<>(Objects.requireNonNull(persistence).readIndex());
+                    persisted = records;
+                }
+            }
+        }
+        return records;
+    }
 
-        try {
-            Map<String, List<String>> cookieMap = new HashMap<>();
-            cookieMap.put("Set-cookie", Collections.singletonList(cookie.toString()));
-            cookieHandler.put(url.uri(), cookieMap);
-        } catch (Exception ignored) {
+    /**
+     * Rewrites the log from the live store. Runs on the persistence writer thread.
+     */
+    private void compact() {
+        hydrateAll();
+        long now = System.currentTimeMillis();
+        Map<String, List<CookiePersistence.Record>> snapshot = new HashMap<>();
+        for (Map.Entry<String, List<Cookie>> entry : cookieStore.entrySet()) {
+            List<CookiePersistence.Record> records = new ArrayList<>();
+            for (Cookie cookie : entry.getValue()) {
+                if (cookie.expiresAt() > now) {
+                    records.add(new CookiePersistence.Record("https://" + cookie.domain() + cookie.path(), cookie.toString()));
+                }
+            }
+            if (!records.isEmpty()) snapshot.put(entry.getKey(), records);
         }
+        persistence.rewrite(snapshot);
     }
 
     public void getCookies(PluginCall call) throws URISyntaxException {
         String domain = call.getString("domain");
         JSObject cookieMap = new JSObject();
-        List<Cookie> cookies = cookieStore.get(Utilities.getDomainName(domain));
-        if (cookies != null) {
-            for (Cookie cookie : cookies) {
-                cookieMap.put(cookie.name(), cookie.value());
+        HttpUrl url = toUrl(domain);
+        if (url == null) {
+            throw new URISyntaxException(String.valueOf(domain), "Invalid domain");
+        }
+        // Every live cookie that applies to the host, whatever its path
+        String key = storeKey(url.host());
+        hydrate(key);
+        List<Cookie> bucket = cookieStore.get(key);
+        long now = System.currentTimeMillis();
+        if (bucket != null) {
+            for (Cookie cookie : bucket) {
+                if (cookie.expiresAt() > now && domainMatches(cookie, url.host())) {
+                    cookieMap.put(cookie.name(), cookie.value());
+                }
             }
         }
         call.resolve(cookieMap);
@@ -75,16 +229,70 @@ public class CookieManager implements CookieJar {
 
     public void removeCookieByName(PluginCall call) {
         String cookieName = call.getString("cookieName");
-        for (Map.Entry<String, List<Cookie>> entry : cookieStore.entrySet()) {
-            List<Cookie> filteredCookies = new ArrayList<>();
-            for (Cookie cookie : entry.getValue()) {
-                if (!cookie.name().equals(cookieName)) {
-                    filteredCookies.add(cookie);
+        hydrateAll();
+        if (persistence != null && cookieName != null) {
+            persistence.appendRemove(cookieName);
+        }
+        for (String key : cookieStore.keySet()) {
+            while (true) {
+                List<Cookie> current = cookieStore.get(key);
+                if (current == null) break;
+                List<Cookie> filteredCookies = new ArrayList<>();
+                for (Cookie cookie : current) {
+                    if (!cookie.name().equals(cookieName)) {
+                        filteredCookies.add(cookie);
+                    }
                 }
+                if (filteredCookies.size() == current.size() || replaceBucket(key, current, filteredCookies)) break;
             }
-            entry.setValue(filteredCookies);
         }
         call.resolve();
     }
-}
 
+    private void evictExpired(String key, long now) {
+        while (true) {
+            List<Cookie> current = cookieStore.get(key);
+            if (current == null) return;
+            List<Cookie> live = new ArrayList<>();
+            for (Cookie cookie : current) {
+                if (cookie.expiresAt() > now) live.add(cookie);
+            }
+            if (live.size() == current.size() || replaceBucket(key, current, live)) return;
+        }
+    }
+
+    /**
+     * Atomically swaps a bucket, failing if another thread changed it since {@code expected} was read.
+     */
+    private boolean replaceBucket(String key, List<Cookie> expected, List<Cookie> updated) {
+        List<Cookie> value = Collections.unmodifiableList(updated);
+        if (expected == null) {
+            return updated.isEmpty() || cookieStore.putIfAbsent(key, value) == null;
+        }
+        return updated.isEmpty() ? cookieStore.remove(key, expected) : cookieStore.replace(key, expected, value);
+    }
+
+    /**
+     * Cookies for {@code a.example.com} may be set on {@code example.com}, so both must land in the
+     * same bucket: the registrable domain. IP addresses and public suffixes are their own bucket.
+     */
+    private static String storeKey(String host) {
+        HttpUrl url = new HttpUrl.Builder().scheme("https").host(host).build();
+        String registrable = url.topPrivateDomain();
+        return registrable != null ? registrable : url.host();
+    }
+
+    private static boolean domainMatches(Cookie cookie, String host) {
+        if (host.equals(cookie.domain())) return true;
+        return !cookie.hostOnly() && host.endsWith("." + cookie.domain());
+    }
+
+    private static HttpUrl toUrl(String domain) {
+        if (domain == null) return null;
+        HttpUrl url = HttpUrl.parse(domain);
+        if (url == null) {
+            url = HttpUrl.parse("https://" + domain);
+        }
+        return url;
+    }
+}
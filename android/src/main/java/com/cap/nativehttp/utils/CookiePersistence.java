@@ -0,0 +1,164 @@
+// CookiePersistence.java
+package com.cap.nativehttp.utils;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Append-only on-disk log of cookie changes for {@link CookieManager}. Every line is one record:
+ * {@code S<TAB>key<TAB>url<TAB>set-cookie} stores a cookie under its registrable domain key, and
+ * {@code R<TAB>name} removes every cookie with that name. Appends run on a background thread; the
+ * log is periodically rewritten from a snapshot to drop superseded records.
+ */
+public class CookiePersistence {
+
+    private static final String TAG = "CookiePersistence";
+
+    /**
+     * A stored cookie that has not been parsed yet.
+     */
+    public static final class Record {
+        final String url;
+        final String setCookie;
+
+        Record(String url, String setCookie) {
+            this.url = url;
+            this.setCookie = setCookie;
+        }
+
+        String name() {
+            int separator = setCookie.indexOf('=');
+            return separator > 0 ? setCookie.substring(0, separator).trim() : setCookie;
+        }
+    }
+
+    private final File file;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "NativeHttp-cookie-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Only touched on the writer thread
+    private Writer out;
+
+    public CookiePersistence(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the log into raw records grouped by key, with removals already applied. Cookies are
+     * not parsed here, so the cost per host is only paid when that host is first requested.
+     */
+    public Map<String, List<Record>> readIndex() {
+        Map<String, List<Record>> index = new HashMap<>();
+        if (!file.exists()) return index;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 4);
+                if (fields.length == 4 && "S".equals(fields[0])) {
+                    List<Record> records = index.get(fields[1]);
+                    if (records == null) {
+                        records = new ArrayList<>();
+                        index.put(fields[1], records);
+                    }
+                    records.add(new Record(fields[2], fields[3]));
+                } else if (fields.length == 2 && "R".equals(fields[0])) {
+                    for (List<Record> records : index.values()) {
+                        for (Iterator<Record> it = records.iterator(); it.hasNext(); ) {
+                            if (it.next().name().equals(fields[1])) it.remove();
+                        }
+                    }
+                }
+                // Anything else is a torn write from a crash and is skipped
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read cookie log", e);
+        }
+        return index;
+    }
+
+    public void appendSet(String key, String url, String setCookie) {
+        append("S\t" + key + "\t" + url + "\t" + setCookie + "\n");
+    }
+
+    public void appendRemove(String name) {
+        append("R\t" + name + "\n");
+    }
+
+    /**
+     * Runs a task on the writer thread, after every append queued so far.
+     */
+    public void execute(Runnable task) {
+        writer.execute(task);
+    }
+
+    /**
+     * Replaces the log with the given records. Must be called on the writer thread, see {@link #execute}.
+     */
+    public void rewrite(Map<String, List<Record>> snapshot) {
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            closeOut();
+            try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+                for (Map.Entry<String, List<Record>> entry : snapshot.entrySet()) {
+                    for (Record record : entry.getValue()) {
+                        w.write("S\t" + entry.getKey() + "\t" + record.url + "\t" + record.setCookie + "\n");
+                    }
+                }
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Failed to replace " + file);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to compact cookie log", e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+
+    private void append(String line) {
+        writer.execute(() -> {
+            try {
+                if (out == null) {
+                    File parent = file.getParentFile();
+                    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                        throw new IOException("Failed to create " + parent);
+                    }
+                    out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+                }
+                out.write(line);
+                out.flush();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to persist cookie", e);
+                closeOut();
+            }
+        });
+    }
+
+    private void closeOut() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        out = null;
+    }
+}
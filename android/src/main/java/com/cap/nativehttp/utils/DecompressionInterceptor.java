@@ -0,0 +1,95 @@
+// DecompressionInterceptor.java
+package com.cap.nativehttp.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.brotli.dec.BrotliInputStream;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.GzipSource;
+import okio.Okio;
+
+/**
+ * Advertises Brotli next to gzip for requests that opt in and decodes the response while it is
+ * read, so the compressed body is never buffered. Setting {@code Accept-Encoding} turns off
+ * OkHttp's transparent gzip, so gzip responses are decoded here as well. Sits above the cache,
+ * which keeps storing the compressed bytes.
+ */
+public class DecompressionInterceptor implements Interceptor {
+
+    /**
+     * Request tag opting a request into the encodings this interceptor decodes.
+     */
+    public static final class Encodings {
+        public static final Encodings BROTLI = new Encodings("br, gzip");
+
+        private final String acceptEncoding;
+
+        private Encodings(String acceptEncoding) {
+            this.acceptEncoding = acceptEncoding;
+        }
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        Encodings encodings = request.tag(Encodings.class);
+        // Byte ranges address the encoded representation, and explicit headers belong to the caller
+        if (encodings == null || request.header("Accept-Encoding") != null || request.header("Range") != null) {
+            return chain.proceed(request);
+        }
+
+        Response response = chain.proceed(request.newBuilder()
+                .header("Accept-Encoding", encodings.acceptEncoding)
+                .build());
+        ResponseBody body = response.body();
+        String contentEncoding = response.header("Content-Encoding");
+        if (body == null || contentEncoding == null || !promisesBody(response)) {
+            return response;
+        }
+
+        BufferedSource decoded;
+        if ("br".equalsIgnoreCase(contentEncoding)) {
+            decoded = Okio.buffer(Okio.source(new BrotliInputStream(body.source().inputStream())));
+        } else if ("gzip".equalsIgnoreCase(contentEncoding)) {
+            decoded = Okio.buffer(new GzipSource(body.source()));
+        } else {
+            return response;
+        }
+        // The decoded length is unknown until the end, so the headers must not claim the encoded one
+        return response.newBuilder()
+                .removeHeader("Content-Encoding")
+                .removeHeader("Content-Length")
+                .body(ResponseBody.create(decoded, body.contentType(), -1L))
+                .build();
+    }
+
+    /**
+     * HEAD, 1xx, 204 and 304 responses carry the header but no body to decode. The same rule as
+     * OkHttp's internal {@code HttpHeaders.promisesBody}, which apps may not have in their version.
+     */
+    private static boolean promisesBody(Response response) {
+        if ("HEAD".equals(response.request().method())) return false;
+        int code = response.code();
+        if ((code < 100 || code >= 200) && code != 204 && code != 304) return true;
+        // A server that breaks the rules may still send a body, which its framing shows
+        return parseLength(response.header("Content-Length")) != -1
+                || "chunked".equalsIgnoreCase(response.header("Transfer-Encoding"));
+    }
+
+    private static long parseLength(@Nullable String contentLength) {
+        try {
+            return contentLength != null ? Long.parseLong(contentLength) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
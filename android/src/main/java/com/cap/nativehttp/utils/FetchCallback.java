@@ -0,0 +1,32 @@
+// FetchCallback.java
+package com.cap.nativehttp.utils;
+
+import androidx.annotation.Nullable;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+/**
+ * Receives the outcome of a fetch. Lets the same request pipeline answer a {@link PluginCall},
+ * several coalesced calls, or an item of a batch.
+ */
+public interface FetchCallback {
+
+    void resolve(JSObject response);
+
+    void reject(String message, @Nullable String code);
+
+    static FetchCallback of(PluginCall call) {
+        return new FetchCallback() {
+            @Override
+            public void resolve(JSObject response) {
+                call.resolve(response);
+            }
+
+            @Override
+            public void reject(String message, @Nullable String code) {
+                call.reject(message, code);
+            }
+        };
+    }
+}
@@ -0,0 +1,223 @@
+// FileDownloader.java
+package com.cap.nativehttp.utils;
+
+import androidx.annotation.Nullable;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * Writes response bodies to files through a large {@link FileChannel} buffer. Resumable downloads
+ * keep a sidecar file with the validator of the partial content, so an interrupted download
+ * continues with a {@code Range}/{@code If-Range} request instead of starting from zero.
+ */
+public class FileDownloader {
+
+    public static final String EVENT_PROGRESS = "downloadProgress";
+    private static final String SIDECAR_SUFFIX = ".nhpart";
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+    /**
+     * Receives throttled progress while a body is written.
+     */
+    public interface ProgressListener {
+        void onProgress(long bytesWritten, long totalBytes);
+    }
+
+    interface WriteListener {
+        void onWrite(long bytes);
+    }
+
+    /**
+     * Lets one progress event through per interval, from whichever thread asks first.
+     */
+    static final class ProgressThrottle {
+        private final AtomicLong lastEmit = new AtomicLong();
+
+        boolean ready() {
+            long now = System.currentTimeMillis();
+            long last = lastEmit.get();
+            return now - last >= PROGRESS_INTERVAL_MS && lastEmit.compareAndSet(last, now);
+        }
+    }
+
+    /**
+     * Prepares every request of a resumable download, the first one included: asks for the identity
+     * encoding and adds {@code Range} and {@code If-Range} headers when a partial copy of the same
+     * URL exists.
+     */
+    public static Request prepareResume(Request request, File target) {
+        // Ranges address the identity encoding, so the bytes on disk must be identity bytes too.
+        // OkHttp's transparent gzip would store decoded bytes and make the offset meaningless
+        request = request.newBuilder().header("Accept-Encoding", "identity").build();
+        JSONObject sidecar = readSidecar(target);
+        long offset = target.length();
+        if (sidecar == null || offset <= 0 || !request.url().toString().equals(sidecar.optString("url"))) {
+            return request;
+        }
+        String validator = sidecar.optString("etag", "");
+        if (validator.isEmpty() || validator.startsWith("W/")) {
+            // Weak ETags cannot validate a byte range, fall back to Last-Modified
+            validator = sidecar.optString("lastModified", "");
+        }
+        if (validator.isEmpty()) return request;
+        return request.newBuilder()
+                .header("Range", "bytes=" + offset + "-")
+                .header("If-Range", validator)
+                .build();
+    }
+
+    /**
+     * Writes the body of a successful response into the target, appending to the partial copy when
+     * the server answered the range request with 206.
+     *
+     * @return the size of the complete file
+     */
+    public static long write(Response response, File target, boolean resumable, @Nullable ProgressListener listener) throws IOException {
+        ResponseBody body = response.body();
+        if (body == null) throw new IOException("Empty response body");
+
+        long offset = 0;
+        long total = body.contentLength();
+        if (response.code() == 206) {
+            Matcher range = CONTENT_RANGE.matcher(String.valueOf(response.header("Content-Range")));
+            if (!range.matches() || Long.parseLong(range.group(1)) != target.length()) {
+                throw new IOException("Unexpected Content-Range: " + response.header("Content-Range"));
+            }
+            offset = Long.parseLong(range.group(1));
+            total = "*".equals(range.group(3)) ? -1 : Long.parseLong(range.group(3));
+        }
+        // Any other status is a full body: either not resumed, or the validator no longer matches
+
+        if (resumable && response.header("Content-Encoding") == null) {
+            // An encoded body cannot be resumed by byte offset, so it only gets the sidecar when
+            // the server honoured the identity request
+            writeSidecar(target, response);
+        } else {
+            deleteSidecar(target);
+        }
+
+        AtomicLong written = new AtomicLong(offset);
+        long totalBytes = total;
+        ProgressThrottle throttle = new ProgressThrottle();
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw");
+             FileChannel channel = file.getChannel();
+             BufferedSource source = body.source()) {
+            channel.truncate(offset);
+            copy(source, channel, offset, bytes -> {
+                long progress = written.addAndGet(bytes);
+                if (listener != null && throttle.ready()) listener.onProgress(progress, totalBytes);
+            });
+        }
+        if (listener != null) listener.onProgress(written.get(), totalBytes);
+        deleteSidecar(target);
+        return written.get();
+    }
+
+    /**
+     * Copies a source into the channel starting at {@code position}, in buffer-sized positional
+     * writes. Positional writes leave the channel position alone, so several sources can fill
+     * disjoint ranges of the same channel concurrently.
+     *
+     * @return the number of bytes copied
+     */
+    static long copy(BufferedSource source, FileChannel channel, long position, WriteListener listener) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long copied = 0;
+        while (true) {
+            boolean exhausted = source.read(buffer) == -1;
+            if (buffer.position() > 0 && (exhausted || !buffer.hasRemaining())) {
+                buffer.flip();
+                int length = buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, position + copied + buffer.position());
+                }
+                copied += length;
+                buffer.clear();
+                listener.onWrite(length);
+            }
+            if (exhausted) return copied;
+        }
+    }
+
+    /**
+     * Forgets a partial download, for example when the server rejects its range with 416.
+     */
+    public static void discardPartial(File target) {
+        deleteSidecar(target);
+        //noinspection ResultOfMethodCallIgnored
+        target.delete();
+    }
+
+    /**
+     * Builds a listener that emits {@code downloadProgress} events for the request.
+     */
+    public static ProgressListener eventListener(PluginEventEmitter emitter, String requestId, String url) {
+        return (bytesWritten, totalBytes) -> {
+            JSObject progress = new JSObject();
+            progress.put("requestId", requestId);
+            progress.put("url", url);
+            progress.put("bytesWritten", bytesWritten);
+            progress.put("totalBytes", totalBytes);
+            emitter.emit(EVENT_PROGRESS, progress);
+        };
+    }
+
+    @Nullable
+    private static JSONObject readSidecar(File target) {
+        File sidecar = new File(target.getPath() + SIDECAR_SUFFIX);
+        if (!sidecar.exists()) return null;
+        try (BufferedSource source = Okio.buffer(Okio.source(sidecar))) {
+            return new JSONObject(source.readUtf8());
+        } catch (IOException | JSONException e) {
+            return null;
+        }
+    }
+
+    private static void writeSidecar(File target, Response response) throws IOException {
+        // The URL the caller asked for, not the one redirects ended at, is what the next attempt has
+        Response first = response;
+        while (first.priorResponse() != null) {
+            first = first.priorResponse();
+        }
+        JSONObject sidecar = new JSONObject();
+        try {
+            sidecar.put("url", first.request().url().toString());
+            sidecar.putOpt("etag", response.header("ETag"));
+            sidecar.putOpt("lastModified", response.header("Last-Modified"));
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(target.getPath() + SIDECAR_SUFFIX), StandardCharsets.UTF_8)) {
+            writer.write(sidecar.toString());
+        }
+    }
+
+    static void deleteSidecar(File target) {
+        //noinspection ResultOfMethodCallIgnored
+        new File(target.getPath() + SIDECAR_SUFFIX).delete();
+    }
+}
@@ -17,15 +17,28 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ForwardingCookieHandler extends CookieHandler {
     private static final String VERSION_ZERO_HEADER = "Set-Cookie";
     private static final String VERSION_ONE_HEADER = "Set-Cookie2";
     private static final String COOKIE_HEADER = "Cookie";
 
+    private static final long FLUSH_DELAY_MS = 500;
+
     private final Context context;
+    // Single thread, so cookie writes keep their order and never touch the OkHttp callback threads
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "NativeHttp-cookie-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
     @Nullable
-    private CookieManager cookieManager;
+    private volatile CookieManager cookieManager;
 
     public ForwardingCookieHandler(Context context) {
         this.context = context;
@@ -60,14 +73,31 @@ public class ForwardingCookieHandler extends CookieHandler {
         }
     }
 
+    /**
+     * Queues the cookies for the WebView store. Writes happen on a background thread and are
+     * persisted by a single flush per {@link #FLUSH_DELAY_MS} window, however many batches arrive.
+     */
     public void addCookies(String url, List<String> cookies) {
-        CookieManager cm = getCookieManager();
-        if (cm != null && cookies != null) {
+        if (cookies == null || cookies.isEmpty()) return;
+        executor.execute(() -> {
+            CookieManager cm = getCookieManager();
+            if (cm == null) return;
             for (String cookie : cookies) {
                 cm.setCookie(url, cookie, null); // Async by default
             }
-            cm.flush(); // Persist cookies
-        }
+            scheduleFlush();
+        });
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled.compareAndSet(false, true)) return;
+        executor.schedule(() -> {
+            flushScheduled.set(false);
+            CookieManager cm = getCookieManager();
+            if (cm != null) {
+                cm.flush(); // Persist cookies
+            }
+        }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
     }
 
     private static boolean isCookieHeader(String name) {
@@ -3,10 +3,10 @@ package com.cap.nativehttp.utils;
 // HttpFetcher.java
 
 import android.content.Context;
-import android.os.Build;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.getcapacitor.JSObject;
 import com.getcapacitor.PluginCall;
@@ -24,34 +24,167 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.List;
 import java.util.Objects;
+import java.util.UUID;
 
+import okhttp3.CacheControl;
 import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.Okio;
 
 public class HttpFetcher {
 
     private final Context context;
     private final CookieManager cookieManager;
+    private final PluginEventEmitter eventEmitter;
+    private final ResponseFileStore responseFiles;
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+    private final RequestScheduler scheduler = new RequestScheduler();
+    private final RequestRegistry requests = new RequestRegistry();
+    @Nullable
+    private volatile OfflineOutbox outbox;
+    /**
+     * Reject code of requests that failed in the transport, so their outcome on the server is unknown.
+     */
+    public static final String NETWORK_ERROR = "NETWORK_ERROR";
     private static final String DISABLE_ALL_SECURITY = "disableAllSecurity";
     private static final String OPT_SSL_PINNING_KEY = "sslPinning";
     private static final String RESPONSE_TYPE = "responseType";
+    private static final String REQUEST_ID = "requestId";
 
-    public HttpFetcher(Context context, CookieManager cookieManager) {
+    public HttpFetcher(Context context, CookieManager cookieManager, PluginEventEmitter eventEmitter, ResponseFileStore responseFiles) {
         this.context = context;
         this.cookieManager = cookieManager;
+        this.eventEmitter = eventEmitter;
+        this.responseFiles = responseFiles;
+    }
+
+    /**
+     * Enables {@code queueIfOffline} for later requests.
+     */
+    public void setOutbox(@Nullable OfflineOutbox outbox) {
+        this.outbox = outbox;
     }
 
     public void fetch(PluginCall call) throws JSONException, IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
-        String url = call.getString("url");
-        JSObject options = call.getObject("options");
+        fetch(call.getString("url"), call.getObject("options"), FetchCallback.of(call));
+    }
+
+    public void fetch(String url, JSObject options, FetchCallback call) throws JSONException, IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
         JSObject response = new JSObject();
+        if (options.optString(REQUEST_ID, "").isEmpty()) {
+            // Fixed once, so every event of this request carries the same id
+            options.put(REQUEST_ID, UUID.randomUUID().toString());
+        }
+        OkHttpClient client = clientFor(url, options);
+        if (client == null) {
+            call.reject("SSL Pinning key not provided", null);
+            return;
+        }
+        OfflineOutbox outbox = this.outbox;
+        if (outbox != null && OfflineOutbox.shouldQueue(options)) {
+            if (!outbox.isOnline()) {
+                call.resolve(outbox.add(url, options));
+                return;
+            }
+            // Online, but earlier requests for the host are still queued: going first would reorder them
+            JSObject queued = outbox.addBehindPending(url, options);
+            if (queued != null) {
+                call.resolve(queued);
+                outbox.replay();
+                return;
+            }
+        }
+
+        TempFileManager.Scope tempFiles = TempFileManager.newScope();
+        Request request;
+        try {
+            request = OkHttpUtils.applyCachePolicy(OkHttpUtils.buildRequest(context, tempFiles, options, url), options);
+            if (isResumableDownload(options)) {
+                request = FileDownloader.prepareResume(request, resolveDownloadFile(options));
+            }
+            request = ProgressRequestBody.wrap(
+                    request,
+                    eventEmitter,
+                    requestIdOf(options),
+                    options.optBoolean("reportProgress", false),
+                    options.optLong("uploadBandwidthLimit", 0)
+            );
+        } catch (JSONException | IOException | RuntimeException e) {
+            tempFiles.release();
+            throw e;
+        }
+        String requestId = requestIdOf(options);
+        if ("stream".equals(options.optString(RESPONSE_TYPE, "text"))) {
+            // Registered before sending, so cancelStream can also stop a request still waiting for headers
+            call = newStreamer(options).register(call, () -> requests.cancel(requestId));
+        }
+        call = requests.track(requestId, options.optString("tag", null), call);
+        if ("stale-while-revalidate".equals(options.optString("cachePolicy")) && "GET".equals(request.method())) {
+            tempFiles.release();
+            fetchStaleWhileRevalidate(client, request, call, options, response);
+        } else if (SegmentedDownloader.isEligible(request, options)) {
+            tempFiles.release();
+            fetchSegmented(client, request, call, options, response);
+        } else if (RequestCoalescer.isEligible(request, options)) {
+            tempFiles.release();
+            RequestCoalescer.Ticket ticket = coalescer.join(client, request, options, call);
+            // Leaving only cancels the shared call once every waiter has left
+            requests.setCancellable(call, ticket::leave);
+            if (ticket.isLeader()) {
+                ticket.getFlight().setCall(enqueue(client, request, ticket.getFlight(), options, response, null));
+            }
+        } else {
+            enqueue(client, request, call, options, response, tempFiles);
+        }
+    }
+
+    /**
+     * Opens a connection to the host ahead of the first request: DNS, TCP and the TLS handshake
+     * with pin verification all happen here, and the connection stays in the shared pool.
+     */
+    public void preconnect(String url, JSObject options, FetchCallback call) throws JSONException, IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
+        OkHttpClient client = clientFor(url, options);
+        if (client == null) {
+            call.reject("SSL Pinning key not provided", null);
+            return;
+        }
+        Request request = new Request.Builder()
+                .url(url)
+                .head()
+                .cacheControl(CacheControl.FORCE_NETWORK)
+                .tag(RequestMetrics.class, new RequestMetrics())
+                .build();
+        OkHttpUtils.newCall(client, request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call_, @NonNull IOException e) {
+                rejectNetworkError(call, e.getMessage());
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call_, @NonNull Response okHttpResponse) {
+                // Any status will do, the connection is what this request was for
+                okHttpResponse.close();
+                JSObject result = new JSObject();
+                result.put("status", okHttpResponse.code());
+                result.put("protocol", okHttpResponse.protocol().toString());
+                call.resolve(result);
+            }
+        });
+    }
+
+    /**
+     * @return the registered client for the request's security options, or null when it has none
+     */
+    @Nullable
+    private OkHttpClient clientFor(String url, JSObject options) throws JSONException, IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
         String domainName;
         try {
             domainName = Utilities.getDomainName(url);
@@ -59,72 +192,178 @@ public class HttpFetcher {
             domainName = url;
         }
 
-        OkHttpClient client = null;
         if (options.optBoolean(DISABLE_ALL_SECURITY, false)) {
-            client = OkHttpUtils.buildDefaultOkHttpClient(cookieManager, domainName, options);
+            return OkHttpUtils.buildDefaultOkHttpClient(cookieManager, domainName, options);
         } else if (options.has(OPT_SSL_PINNING_KEY)) {
             JSONArray certsJson = ((JSONObject) options.get(OPT_SSL_PINNING_KEY)).getJSONArray("certs");
             List<String> certs = new ArrayList<>();
             for (int i = 0; i < certsJson.length(); i++) {
                 certs.add(certsJson.getString(i));
             }
-            client = OkHttpUtils.buildOkHttpClient(cookieManager, domainName, certs, options);
-        } else {
-            call.reject("SSL Pinning key not provided");
-            return;
+            return OkHttpUtils.buildOkHttpClient(cookieManager, domainName, certs, options);
         }
+        return null;
+    }
+
+    /**
+     * Cancels a request by the id it was sent with, whether it is queued, in flight or streaming.
+     */
+    public boolean cancel(String requestId) {
+        boolean cancelled = requests.cancel(requestId);
+        return ResponseStreamer.cancel(requestId) || cancelled;
+    }
 
-        Request request = OkHttpUtils.buildRequest(context, options, url);
-        client.newCall(request).enqueue(new Callback() {
+    /**
+     * @return the number of pending requests sent with the tag that were cancelled
+     */
+    public int cancelAll(String tag) {
+        return requests.cancelAll(tag);
+    }
+
+    private Call enqueue(OkHttpClient client, Request request, FetchCallback call, JSObject options, JSObject response, @Nullable TempFileManager.Scope tempFiles) {
+        Call okHttpCall = OkHttpUtils.newCall(client, request);
+        requests.setCancellable(call, () -> {
+            if (!scheduler.cancel(okHttpCall)) okHttpCall.cancel();
+        });
+        scheduler.enqueue(client, okHttpCall, RequestScheduler.Priority.parse(options.optString("priority", "normal")), new Callback() {
             @Override
             public void onFailure(@NonNull Call call_, @NonNull IOException e) {
-                TempFileManager.cleanup();
-                call.reject("Error in network request", e.getMessage());
+                if (tempFiles != null) tempFiles.release();
+                if (call_.isCanceled()) {
+                    call.reject("Request canceled", "CANCELED");
+                } else if (!queueOffline(request, options, call)) {
+                    rejectNetworkError(call, e.getMessage());
+                }
             }
 
             @Override
             public void onResponse(@NonNull Call call_, @NonNull Response okHttpResponse) {
                 try {
-                    handleResponse(call, options, okHttpResponse, response);
+                    handleResponse(call, call_, options, okHttpResponse, response);
                 } finally {
-                    TempFileManager.cleanup();
+                    if (tempFiles != null) tempFiles.release();
+                }
+            }
+        });
+        return okHttpCall;
+    }
+
+    /**
+     * Queues a request that failed because the device went offline, if it asked for that.
+     *
+     * @return whether the request was queued and answered
+     */
+    private boolean queueOffline(Request request, JSObject options, FetchCallback call) {
+        OfflineOutbox outbox = this.outbox;
+        if (outbox == null || !OfflineOutbox.shouldQueue(options) || outbox.isOnline()) return false;
+        try {
+            call.resolve(outbox.add(request.url().toString(), options));
+            return true;
+        } catch (IOException | JSONException e) {
+            Log.w("HttpFetcher", "Failed to queue offline request for " + request.url(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Answers from the cache when any copy exists, however stale, and refreshes the cache in the
+     * background. Falls back to a normal network request on a cache miss.
+     */
+    private void fetchStaleWhileRevalidate(OkHttpClient client, Request request, FetchCallback call, JSObject options, JSObject response) {
+        Call cacheCall = OkHttpUtils.newCall(client, OkHttpUtils.cacheOnly(request));
+        requests.setCancellable(call, cacheCall::cancel);
+        cacheCall.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call_, @NonNull IOException e) {
+                if (call_.isCanceled()) {
+                    call.reject("Request canceled", "CANCELED");
+                    return;
+                }
+                enqueue(client, request, call, options, response, null);
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call_, @NonNull Response okHttpResponse) {
+                if (okHttpResponse.cacheResponse() == null) {
+                    // Cache miss, OkHttp answered 504 Unsatisfiable Request
+                    okHttpResponse.close();
+                    enqueue(client, request, call, options, response, null);
+                    return;
                 }
+                handleResponse(call, call_, options, okHttpResponse, response);
+                OkHttpUtils.newCall(client, OkHttpUtils.revalidate(request)).enqueue(new Callback() {
+                    @Override
+                    public void onFailure(@NonNull Call revalidation, @NonNull IOException e) {
+                        Log.w("HttpFetcher", "Background revalidation failed for " + request.url(), e);
+                    }
+
+                    @Override
+                    public void onResponse(@NonNull Call revalidation, @NonNull Response revalidated) {
+                        // Reading the body to the end is what commits the fresh copy to the cache
+                        try (ResponseBody body = revalidated.body()) {
+                            if (body != null) body.source().readAll(Okio.blackhole());
+                        } catch (IOException e) {
+                            Log.w("HttpFetcher", "Background revalidation failed for " + request.url(), e);
+                        }
+                    }
+                });
             }
         });
     }
 
-    private void handleResponse(PluginCall call, JSObject options, Response okHttpResponse, JSObject response) {
+    private void handleResponse(FetchCallback call, Call okHttpCall, JSObject options, Response networkResponse, JSObject response) {
+        Response okHttpResponse = TransportTrackingBody.wrap(networkResponse);
         ResponseBody body = okHttpResponse.body();
 
         try (body) {
             if (body == null) {
-                call.reject("Empty response body");
+                call.reject("Empty response body", null);
                 return;
             }
             String responseType = options.optString(RESPONSE_TYPE, "text");
+            if ("stream".equals(responseType) && okHttpResponse.isSuccessful()) {
+                streamResponse(call, okHttpCall, options, okHttpResponse, response, body);
+                return;
+            }
             if ("file".equals(responseType) || "blob".equals(responseType)) {
-                String dirName = options.optString("fileSaveDirectory", "DATA");
-                File baseDir = Utilities.resolveDirectory(context, dirName);
-                File file = new File(
-                        baseDir,
-                        options.optString("fileName", System.currentTimeMillis() + ".bin")
-                );
-                // Check write permission
-                if (!Objects.requireNonNull(file.getParentFile()).canWrite()) {
-                    Log.e("HttpFetcher", "Cannot write to path: " + file.getAbsolutePath());
-                    call.reject("WRITE_PERMISSION_DENIED", "App lacks permission to write to: " + baseDir.getAbsolutePath());
-                    return;
+                File file = resolveDownloadFile(options);
+                if (!checkWritable(call, file)) return;
+                boolean resumable = isResumableDownload(options);
+                if (resumable && !okHttpResponse.isSuccessful()) {
+                    // Keep the partial file for the next attempt, unless the server rejected its range
+                    if (okHttpResponse.code() == 416) {
+                        FileDownloader.discardPartial(file);
+                    }
+                    response.put("bodyString", body.string());
+                } else {
+                    FileDownloader.ProgressListener progress = downloadProgressListener(options, okHttpResponse.request(), response);
+                    long size = FileDownloader.write(okHttpResponse, file, resumable, progress);
+                    response.put("fileDetails", fileDetails(file, size, body.contentType()));
                 }
-                Utilities.copyInputStreamToFile(body.byteStream(), file);
-                JSObject fileDetails = new JSObject();
-                fileDetails.put("path", file.getAbsolutePath());
-                fileDetails.put("mimeType", body.contentType() != null ? Objects.requireNonNull(body.contentType()).toString() : "application/octet-stream");
+            } else if ("fileUrl".equals(responseType) && okHttpResponse.isSuccessful()) {
+                File file = responseFiles.newFile(body.contentType());
+                FileDownloader.ProgressListener progress = downloadProgressListener(options, okHttpResponse.request(), response);
+                long size;
+                try {
+                    size = FileDownloader.write(okHttpResponse, file, false, progress);
+                } catch (IOException | RuntimeException e) {
+                    responseFiles.discard(file);
+                    throw e;
+                }
+                responseFiles.trim(file);
+                JSObject fileDetails = fileDetails(file, size, body.contentType());
+                fileDetails.put("url", responseFiles.urlFor(file));
                 response.put("fileDetails", fileDetails);
+            } else if ("json".equals(responseType) && okHttpResponse.isSuccessful()) {
+                try {
+                    response.put("data", readJson(body.source(), options.optJSONArray("select")));
+                } catch (IOException e) {
+                    if (TransportTrackingBody.failedInTransport(okHttpResponse)) throw e;
+                    call.reject("Invalid JSON response", e.getMessage());
+                    return;
+                }
             } else if ("base64".equals(responseType)) {
-                byte[] bytes = body.bytes();
-                String base64 = Build.VERSION.SDK_INT < Build.VERSION_CODES.O
-                        ? android.util.Base64.encodeToString(bytes, android.util.Base64.DEFAULT)
-                        : Base64.getEncoder().encodeToString(bytes);
+                String base64 = Base64Streams.encode(body.source(), body.contentLength());
                 JSObject fileDetails = new JSObject();
                 fileDetails.put("data", base64);
                 fileDetails.put("mimeType", body.contentType() != null ? Objects.requireNonNull(body.contentType()).toString() : "application/octet-stream");
@@ -135,14 +374,167 @@ public class HttpFetcher {
 
             response.put("headers", Utilities.buildResponseHeaders(okHttpResponse));
             response.put("status", okHttpResponse.code());
+            response.put("fromCache", isFromCache(okHttpResponse));
+            // Closing the body ends the call, so the metrics cover the body read and the whole call
+            body.close();
+            putMetricsIfRequested(options, okHttpResponse, response);
 
             if (okHttpResponse.isSuccessful()) {
                 call.resolve(response);
             } else {
                 call.reject("API Response", String.valueOf(response));
             }
+        } catch (IOException e) {
+            if (TransportTrackingBody.failedInTransport(okHttpResponse)) {
+                // The body broke off mid-read, so like a failed call the outcome is unknown
+                rejectNetworkError(call, e.getMessage());
+            } else {
+                // Malformed content or a local storage failure, sending again would not change it
+                call.reject("Unexpected error occurred : ", e.getMessage());
+            }
         } catch (Exception e) {
             call.reject("Unexpected error occurred : ", e.getMessage());
         }
     }
+
+    /**
+     * Parses the body here on the network thread, so the WebView receives a ready object. A 204 or
+     * any other empty body is {@code null}.
+     */
+    private static Object readJson(BufferedSource source, @Nullable JSONArray select) throws IOException, JSONException {
+        if (source.exhausted()) return JSONObject.NULL;
+        if (select == null) return JsonProjection.read(source);
+        List<String> pointers = new ArrayList<>();
+        for (int i = 0; i < select.length(); i++) {
+            pointers.add(select.getString(i));
+        }
+        return JsonProjection.select(source, pointers);
+    }
+
+    /**
+     * Downloads a file as parallel byte ranges, or as a single request when the server cannot
+     * serve ranges for it.
+     */
+    private void fetchSegmented(OkHttpClient client, Request request, FetchCallback call, JSObject options, JSObject response) {
+        File file = resolveDownloadFile(options);
+        if (!checkWritable(call, file)) return;
+        FileDownloader.ProgressListener progress = downloadProgressListener(options, request, response);
+        SegmentedDownloader downloader = new SegmentedDownloader(client, request, file, options.optInt(SegmentedDownloader.OPT_SEGMENTS), progress);
+        requests.setCancellable(call, downloader::cancel);
+        downloader.start(new SegmentedDownloader.Callback() {
+            @Override
+            public void onComplete(Response head, long size) {
+                String contentType = head.header("Content-Type");
+                response.put("fileDetails", fileDetails(file, size, contentType != null ? MediaType.parse(contentType) : null));
+                response.put("headers", Utilities.buildResponseHeaders(head));
+                response.put("status", head.code());
+                response.put("fromCache", false);
+                putMetricsIfRequested(options, head, response);
+                call.resolve(response);
+            }
+
+            @Override
+            public void onUnsupported() {
+                enqueue(client, request, call, options, response, null);
+            }
+
+            @Override
+            public void onFailure(String message) {
+                if (downloader.isCancelled()) {
+                    call.reject("Request canceled", "CANCELED");
+                } else {
+                    rejectNetworkError(call, message);
+                }
+            }
+        });
+    }
+
+    /**
+     * Resolves the call as soon as the headers arrive and then forwards the body as chunk events.
+     */
+    private void streamResponse(FetchCallback call, Call okHttpCall, JSObject options, Response okHttpResponse, JSObject response, ResponseBody body) {
+        String requestId = requestIdOf(options);
+        ResponseStreamer streamer = ResponseStreamer.registered(requestId);
+        if (streamer == null) streamer = newStreamer(options);
+        streamer.attach(okHttpCall);
+        response.put(REQUEST_ID, requestId);
+        response.put("headers", Utilities.buildResponseHeaders(okHttpResponse));
+        response.put("status", okHttpResponse.code());
+        response.put("fromCache", isFromCache(okHttpResponse));
+        putMetricsIfRequested(options, okHttpResponse, response);
+        call.resolve(response);
+
+        streamer.stream(body);
+    }
+
+    private ResponseStreamer newStreamer(JSObject options) {
+        return new ResponseStreamer(
+                requestIdOf(options),
+                eventEmitter,
+                options.optInt("streamChunkSize", ResponseStreamer.DEFAULT_CHUNK_SIZE),
+                options.optString("streamEncoding", "utf8"),
+                options.optInt("streamWindow", 0)
+        );
+    }
+
+    private static boolean checkWritable(FetchCallback call, File file) {
+        File baseDir = Objects.requireNonNull(file.getParentFile());
+        if (baseDir.canWrite()) return true;
+        Log.e("HttpFetcher", "Cannot write to path: " + file.getAbsolutePath());
+        call.reject("WRITE_PERMISSION_DENIED", "App lacks permission to write to: " + baseDir.getAbsolutePath());
+        return false;
+    }
+
+    @Nullable
+    private FileDownloader.ProgressListener downloadProgressListener(JSObject options, Request request, JSObject response) {
+        if (!options.optBoolean("reportProgress", false)) return null;
+        String requestId = requestIdOf(options);
+        response.put(REQUEST_ID, requestId);
+        return FileDownloader.eventListener(eventEmitter, requestId, request.url().toString());
+    }
+
+    private static JSObject fileDetails(File file, long size, @Nullable MediaType contentType) {
+        JSObject fileDetails = new JSObject();
+        fileDetails.put("path", file.getAbsolutePath());
+        fileDetails.put("size", size);
+        fileDetails.put("mimeType", contentType != null ? contentType.toString() : "application/octet-stream");
+        return fileDetails;
+    }
+
+    private File resolveDownloadFile(JSObject options) {
+        File baseDir = Utilities.resolveDirectory(context, options.optString("fileSaveDirectory", "DATA"));
+        return new File(baseDir, options.optString("fileName", System.currentTimeMillis() + ".bin"));
+    }
+
+    // Resuming needs a stable file name to find the partial download again
+    private static boolean isResumableDownload(JSObject options) {
+        String responseType = options.optString(RESPONSE_TYPE, "text");
+        return options.optBoolean("resumable", false)
+                && options.has("fileName")
+                && ("file".equals(responseType) || "blob".equals(responseType));
+    }
+
+    /**
+     * Rejects a request that failed in the transport, where the server may or may not have
+     * processed it, with the {@link #NETWORK_ERROR} code.
+     */
+    private static void rejectNetworkError(FetchCallback call, @Nullable String detail) {
+        call.reject(detail != null ? "Error in network request: " + detail : "Error in network request", NETWORK_ERROR);
+    }
+
+    private static String requestIdOf(JSObject options) {
+        return options.optString(REQUEST_ID, "");
+    }
+
+    private static void putMetricsIfRequested(JSObject options, Response okHttpResponse, JSObject response) {
+        if (!options.optBoolean("collectMetrics", false)) return;
+        RequestMetrics metrics = okHttpResponse.request().tag(RequestMetrics.class);
+        if (metrics != null) {
+            response.put("metrics", metrics.toJSObject());
+        }
+    }
+
+    private static boolean isFromCache(Response okHttpResponse) {
+        return okHttpResponse.cacheResponse() != null && okHttpResponse.networkResponse() == null;
+    }
 }
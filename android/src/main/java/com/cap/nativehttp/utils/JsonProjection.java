@@ -0,0 +1,188 @@
+// JsonProjection.java
+package com.cap.nativehttp.utils;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import androidx.annotation.Nullable;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okio.BufferedSource;
+
+/**
+ * Parses a JSON body with a streaming reader and keeps only the parts addressed by a list of JSON
+ * pointers (RFC 6901). Everything outside the selected subtrees is skipped token by token and never
+ * materialized, so a large payload costs little more than reading it.
+ */
+public class JsonProjection {
+
+    /**
+     * One step of the selected pointers, shared by pointers with a common prefix.
+     */
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>();
+        @Nullable
+        String pointer;
+    }
+
+    /**
+     * Reads the whole document.
+     */
+    public static Object read(BufferedSource source) throws IOException, JSONException {
+        try (JsonReader reader = new JsonReader(new InputStreamReader(source.inputStream(), StandardCharsets.UTF_8))) {
+            return readValue(reader);
+        }
+    }
+
+    /**
+     * Reads only the values at the given pointers.
+     *
+     * @return the selected values keyed by pointer; pointers that match nothing are left out
+     */
+    public static JSObject select(BufferedSource source, List<String> pointers) throws IOException, JSONException {
+        Node root = new Node();
+        for (String pointer : pointers) {
+            Node node = root;
+            for (String token : parse(pointer)) {
+                Node child = node.children.get(token);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(token, child);
+                }
+                node = child;
+            }
+            node.pointer = pointer;
+        }
+
+        JSObject selected = new JSObject();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(source.inputStream(), StandardCharsets.UTF_8))) {
+            walk(reader, root, selected);
+        }
+        return selected;
+    }
+
+    private static void walk(JsonReader reader, Node node, JSObject selected) throws IOException, JSONException {
+        if (node.pointer != null) {
+            // Materialize this subtree; deeper pointers are answered from the built value
+            Object value = readValue(reader);
+            resolve(value, node, selected);
+            return;
+        }
+        if (node.children.isEmpty()) {
+            reader.skipValue();
+            return;
+        }
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                Node child = node.children.get(reader.nextName());
+                if (child != null) {
+                    walk(reader, child, selected);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } else if (token == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            for (int index = 0; reader.hasNext(); index++) {
+                Node child = node.children.get(String.valueOf(index));
+                if (child != null) {
+                    walk(reader, child, selected);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endArray();
+        } else {
+            reader.skipValue();
+        }
+    }
+
+    private static void resolve(Object value, Node node, JSObject selected) throws JSONException {
+        if (node.pointer != null) {
+            selected.put(node.pointer, value);
+        }
+        for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+            Object child = null;
+            if (value instanceof JSONObject) {
+                child = ((JSONObject) value).opt(entry.getKey());
+            } else if (value instanceof JSONArray) {
+                try {
+                    child = ((JSONArray) value).opt(Integer.parseInt(entry.getKey()));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            if (child != null) {
+                resolve(child, entry.getValue(), selected);
+            }
+        }
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    object.put(reader.nextName(), readValue(reader));
+                }
+                reader.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case NUMBER:
+                return parseNumber(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    private static Object parseNumber(String number) {
+        if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+            try {
+                return Long.parseLong(number);
+            } catch (NumberFormatException ignored) {
+                // Larger than a long, fall through to double
+            }
+        }
+        return Double.parseDouble(number);
+    }
+
+    // "/a/b~1c" -> [a, b/c]; the empty pointer addresses the whole document
+    private static String[] parse(String pointer) throws JSONException {
+        if (pointer.isEmpty()) return new String[0];
+        if (pointer.charAt(0) != '/') {
+            throw new JSONException("Invalid JSON pointer: " + pointer);
+        }
+        String[] tokens = pointer.substring(1).split("/", -1);
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = tokens[i].replace("~1", "/").replace("~0", "~");
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,128 @@
+// MetricsEventListener.java
+package com.cap.nativehttp.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Records phase timings for every call into the request's {@link RequestMetrics} tag and, once the
+ * call ends, into the per-domain aggregates of {@link MetricsRegistry}.
+ */
+public class MetricsEventListener extends EventListener {
+
+    public static final EventListener.Factory FACTORY = call -> {
+        RequestMetrics metrics = call.request().tag(RequestMetrics.class);
+        return new MetricsEventListener(metrics != null ? metrics : new RequestMetrics());
+    };
+
+    private final RequestMetrics metrics;
+
+    private MetricsEventListener(RequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void callStart(@NonNull Call call) {
+        metrics.callStart = System.nanoTime();
+        metrics.host = call.request().url().host();
+    }
+
+    @Override
+    public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+        metrics.dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(@NonNull Call call, @NonNull String domainName, @NonNull List<InetAddress> inetAddressList) {
+        metrics.dnsEnd = System.nanoTime();
+    }
+
+    @Override
+    public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy) {
+        metrics.connectStart = System.nanoTime();
+        metrics.connecting = true;
+    }
+
+    @Override
+    public void secureConnectStart(@NonNull Call call) {
+        metrics.secureConnectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(@NonNull Call call, @Nullable Handshake handshake) {
+        metrics.secureConnectEnd = System.nanoTime();
+    }
+
+    @Override
+    public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy, @Nullable Protocol protocol) {
+        metrics.connectEnd = System.nanoTime();
+    }
+
+    @Override
+    public void connectionAcquired(@NonNull Call call, @NonNull Connection connection) {
+        metrics.protocol = connection.protocol().toString();
+        // Only a connect since the last acquisition makes the connection new; a failed route or an
+        // earlier attempt of a retried call leaves connectStart set without saying anything about this one
+        metrics.connectionReused = !metrics.connecting;
+        metrics.connecting = false;
+    }
+
+    @Override
+    public void requestHeadersStart(@NonNull Call call) {
+        metrics.requestStart = System.nanoTime();
+    }
+
+    @Override
+    public void requestHeadersEnd(@NonNull Call call, @NonNull Request request) {
+        metrics.requestEnd = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(@NonNull Call call, long byteCount) {
+        metrics.requestEnd = System.nanoTime();
+        metrics.bytesOut += byteCount;
+    }
+
+    @Override
+    public void responseHeadersStart(@NonNull Call call) {
+        metrics.responseHeadersStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyStart(@NonNull Call call) {
+        metrics.responseBodyStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(@NonNull Call call, long byteCount) {
+        metrics.responseBodyEnd = System.nanoTime();
+        metrics.bytesIn += byteCount;
+    }
+
+    @Override
+    public void callEnd(@NonNull Call call) {
+        metrics.callEnd = System.nanoTime();
+        MetricsRegistry.record(metrics);
+    }
+
+    @Override
+    public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+        metrics.callEnd = System.nanoTime();
+        metrics.failed = true;
+        MetricsRegistry.record(metrics);
+    }
+}
@@ -0,0 +1,96 @@
+// MetricsRegistry.java
+package com.cap.nativehttp.utils;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-domain aggregates of {@link RequestMetrics}: counts, bytes, connection reuse and a
+ * fixed-bucket latency histogram for each phase.
+ */
+public class MetricsRegistry {
+
+    // Upper bounds in milliseconds of every bucket but the last, which is unbounded
+    private static final long[] BUCKET_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+    private static final String[] PHASES = {"dns", "connect", "tls", "ttfb", "bodyRead", "total"};
+
+    private static final ConcurrentHashMap<String, DomainStats> statsByDomain = new ConcurrentHashMap<>();
+
+    static void record(RequestMetrics metrics) {
+        if (metrics.host == null) return;
+        DomainStats stats = statsByDomain.get(metrics.host);
+        if (stats == null) {
+            DomainStats newStats = new DomainStats();
+            stats = statsByDomain.putIfAbsent(metrics.host, newStats);
+            if (stats == null) stats = newStats;
+        }
+        stats.record(metrics);
+    }
+
+    public static JSObject snapshot(boolean reset) {
+        JSObject domains = new JSObject();
+        for (Map.Entry<String, DomainStats> entry : statsByDomain.entrySet()) {
+            domains.put(entry.getKey(), entry.getValue().toJSObject());
+        }
+        if (reset) statsByDomain.clear();
+
+        JSArray bounds = new JSArray();
+        for (long bound : BUCKET_BOUNDS) bounds.put(bound);
+        JSObject snapshot = new JSObject();
+        snapshot.put("bucketBoundsMs", bounds);
+        snapshot.put("domains", domains);
+        return snapshot;
+    }
+
+    private static final class DomainStats {
+        private long count;
+        private long failures;
+        private long reused;
+        private long bytesIn;
+        private long bytesOut;
+        // One row of bucket counts per phase, in the order of PHASES
+        private final long[][] histograms = new long[PHASES.length][BUCKET_BOUNDS.length + 1];
+
+        synchronized void record(RequestMetrics metrics) {
+            count++;
+            if (metrics.failed) failures++;
+            if (metrics.connectionReused) reused++;
+            bytesIn += metrics.bytesIn;
+            bytesOut += metrics.bytesOut;
+            // Phases that did not happen, such as DNS on a reused connection, are not counted
+            add(0, metrics.dnsMillis());
+            add(1, metrics.connectMillis());
+            add(2, metrics.tlsMillis());
+            add(3, metrics.ttfbMillis());
+            add(4, metrics.bodyReadMillis());
+            add(5, metrics.totalMillis());
+        }
+
+        private void add(int phase, double millis) {
+            if (millis <= 0) return;
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && millis > BUCKET_BOUNDS[bucket]) bucket++;
+            histograms[phase][bucket]++;
+        }
+
+        synchronized JSObject toJSObject() {
+            JSObject stats = new JSObject();
+            stats.put("count", count);
+            stats.put("failures", failures);
+            stats.put("connectionReuseRate", count > 0 ? (double) reused / count : 0);
+            stats.put("bytesIn", bytesIn);
+            stats.put("bytesOut", bytesOut);
+            JSObject phases = new JSObject();
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                JSArray buckets = new JSArray();
+                for (long bucketCount : histograms[phase]) buckets.put(bucketCount);
+                phases.put(PHASES[phase], buckets);
+            }
+            stats.put("histograms", phases);
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+// OfflineOutbox.java
+package com.cap.nativehttp.utils;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Durable outbox for mutating requests sent with {@code queueIfOffline}. While the device is
+ * offline such requests are written to an {@link OutboxJournal} instead of failing. When a
+ * validated network appears they are replayed through {@link HttpFetcher}, and so through the same
+ * pinned clients, one at a time per host in the order they were queued, with hosts in parallel.
+ * Every outcome is delivered as an {@code outboxResult} event.
+ * <p>
+ * A replay whose outcome is unknown, because the connection failed after the request may have
+ * reached the server, is sent again later. Every replay therefore carries an
+ * {@code Idempotency-Key} header with the entry's {@code outboxId}, stable across attempts, so the
+ * server can recognise a request it already applied.
+ */
+public class OfflineOutbox {
+
+    public static final String EVENT_RESULT = "outboxResult";
+    private static final String TAG = "OfflineOutbox";
+    private static final List<String> MUTATING_METHODS = Arrays.asList("POST", "PUT", "PATCH", "DELETE");
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final int COMPACT_AFTER_DONE = 100;
+
+    private final ConnectivityManager connectivityManager;
+    private final OutboxJournal journal;
+    private final HttpFetcher httpFetcher;
+    private final PluginEventEmitter eventEmitter;
+    // Guarded by this
+    @Nullable
+    private LinkedHashMap<String, OutboxJournal.Entry> pending;
+    private final Set<String> replayingHosts = new HashSet<>();
+    private int doneSinceCompaction;
+    @Nullable
+    private ConnectivityManager.NetworkCallback networkCallback;
+
+    public OfflineOutbox(Context context, OutboxJournal journal, HttpFetcher httpFetcher, PluginEventEmitter eventEmitter) {
+        this.connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.journal = journal;
+        this.httpFetcher = httpFetcher;
+        this.eventEmitter = eventEmitter;
+    }
+
+    /**
+     * Starts replaying whenever a validated network is available, including right away if one is.
+     */
+    public void start() {
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities capabilities) {
+                if (capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)) {
+                    replay();
+                }
+            }
+        };
+        connectivityManager.registerNetworkCallback(
+                new NetworkRequest.Builder().addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET).build(),
+                networkCallback
+        );
+    }
+
+    public void stop() {
+        if (networkCallback != null) {
+            connectivityManager.unregisterNetworkCallback(networkCallback);
+            networkCallback = null;
+        }
+    }
+
+    public static boolean shouldQueue(JSONObject options) {
+        return options.optBoolean("queueIfOffline", false)
+                && MUTATING_METHODS.contains(options.optString("method", "GET"));
+    }
+
+    public boolean isOnline() {
+        Network network = connectivityManager.getActiveNetwork();
+        NetworkCapabilities capabilities = network != null ? connectivityManager.getNetworkCapabilities(network) : null;
+        return capabilities != null
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+    }
+
+    /**
+     * Queues a request durably.
+     *
+     * @return the response for the original fetch, telling JS the request was queued
+     */
+    public synchronized JSObject add(String url, JSObject options) throws IOException, JSONException {
+        // The replay must not queue itself again
+        JSObject stored = new JSObject(options.toString());
+        stored.remove("queueIfOffline");
+        OutboxJournal.Entry entry = new OutboxJournal.Entry(UUID.randomUUID().toString(), url, stored);
+        journal.appendAdd(entry);
+        pending().put(entry.id, entry);
+        JSObject response = new JSObject();
+        response.put("queued", true);
+        response.put("outboxId", entry.id);
+        response.put("requestId", options.optString("requestId", ""));
+        return response;
+    }
+
+    /**
+     * Queues a request behind the ones still pending for its host, so it cannot overtake them while
+     * they wait for or go through replay.
+     *
+     * @return the response for the original fetch, or null when nothing is pending for the host
+     * and the request may go straight to the network
+     */
+    @Nullable
+    public synchronized JSObject addBehindPending(String url, JSObject options) throws IOException, JSONException {
+        String host = hostOf(url);
+        for (OutboxJournal.Entry entry : pending().values()) {
+            if (hostOf(entry).equals(host)) {
+                return add(url, options);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the queued requests in the order they will be replayed per host
+     */
+    public synchronized JSArray list() {
+        JSArray entries = new JSArray();
+        for (OutboxJournal.Entry entry : pending().values()) {
+            JSObject item = new JSObject();
+            item.put("outboxId", entry.id);
+            item.put("url", entry.url);
+            item.put("method", entry.options.optString("method", "GET"));
+            item.put("requestId", entry.options.optString("requestId", ""));
+            entries.put(item);
+        }
+        return entries;
+    }
+
+    /**
+     * Starts a replay chain for every host that has queued requests and none running yet.
+     */
+    public void replay() {
+        List<String> hosts = new ArrayList<>();
+        synchronized (this) {
+            for (OutboxJournal.Entry entry : pending().values()) {
+                String host = hostOf(entry);
+                if (!replayingHosts.contains(host) && !hosts.contains(host)) {
+                    hosts.add(host);
+                }
+            }
+            replayingHosts.addAll(hosts);
+        }
+        for (String host : hosts) {
+            replayNext(host);
+        }
+    }
+
+    private void replayNext(String host) {
+        OutboxJournal.Entry next = null;
+        synchronized (this) {
+            for (OutboxJournal.Entry entry : pending().values()) {
+                if (hostOf(entry).equals(host)) {
+                    next = entry;
+                    break;
+                }
+            }
+            if (next == null) {
+                replayingHosts.remove(host);
+                return;
+            }
+        }
+        OutboxJournal.Entry entry = next;
+        FetchCallback callback = new FetchCallback() {
+            @Override
+            public void resolve(JSObject response) {
+                JSObject result = result(entry, true);
+                result.put("response", response);
+                finish(entry, result);
+                replayNext(host);
+            }
+
+            @Override
+            public void reject(String message, @Nullable String code) {
+                if (HttpFetcher.NETWORK_ERROR.equals(code)) {
+                    // The outcome is unknown: keep this and later requests for the host queued, in order
+                    synchronized (OfflineOutbox.this) {
+                        replayingHosts.remove(host);
+                    }
+                    return;
+                }
+                JSObject result = result(entry, false);
+                JSObject error = new JSObject();
+                error.put("message", message);
+                error.put("code", code);
+                result.put("error", error);
+                finish(entry, result);
+                replayNext(host);
+            }
+        };
+        try {
+            // Each attempt gets its own copy, the fetcher adds per-request state to the options
+            httpFetcher.fetch(entry.url, withIdempotencyKey(entry), callback);
+        } catch (Exception e) {
+            Log.w(TAG, "Dropping outbox entry " + entry.id + " that can no longer be sent", e);
+            callback.reject("Unexpected error occurred : ", e.getMessage());
+        }
+    }
+
+    // Keeps a key the caller chose, otherwise the entry id identifies the request on every attempt
+    private static JSObject withIdempotencyKey(OutboxJournal.Entry entry) throws JSONException {
+        JSObject options = new JSObject(entry.options.toString());
+        JSONObject headers = options.optJSONObject("headers");
+        if (headers == null) {
+            headers = new JSONObject();
+            options.put("headers", headers);
+        }
+        Iterator<String> names = headers.keys();
+        while (names.hasNext()) {
+            if (IDEMPOTENCY_KEY.equalsIgnoreCase(names.next())) return options;
+        }
+        headers.put(IDEMPOTENCY_KEY, entry.id);
+        return options;
+    }
+
+    private JSObject result(OutboxJournal.Entry entry, boolean ok) {
+        JSObject result = new JSObject();
+        result.put("outboxId", entry.id);
+        result.put("requestId", entry.options.optString("requestId", ""));
+        result.put("ok", ok);
+        return result;
+    }
+
+    private void finish(OutboxJournal.Entry entry, JSObject result) {
+        synchronized (this) {
+            pending().remove(entry.id);
+            journal.appendDone(entry.id);
+            if (pending().isEmpty() || ++doneSinceCompaction >= COMPACT_AFTER_DONE) {
+                doneSinceCompaction = 0;
+                journal.rewrite(pending().values());
+            }
+        }
+        eventEmitter.emit(EVENT_RESULT, result);
+    }
+
+    // Reads the journal once, on first use
+    private LinkedHashMap<String, OutboxJournal.Entry> pending() {
+        if (pending == null) {
+            pending = new LinkedHashMap<>();
+            for (OutboxJournal.Entry entry : journal.read()) {
+                pending.put(entry.id, entry);
+            }
+        }
+        return pending;
+    }
+
+    private static String hostOf(OutboxJournal.Entry entry) {
+        return hostOf(entry.url);
+    }
+
+    private static String hostOf(String url) {
+        HttpUrl parsed = HttpUrl.parse(url);
+        return parsed != null ? parsed.host() : "";
+    }
+}
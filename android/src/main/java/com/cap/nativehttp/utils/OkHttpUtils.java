@@ -10,37 +10,39 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.security.KeyManagementException;
-import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
-import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
-import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
-import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 
+import okhttp3.Cache;
+import okhttp3.CacheControl;
+import okhttp3.Call;
 import okhttp3.CertificatePinner;
+import okhttp3.ConnectionPool;
 import okhttp3.CookieJar;
+import okhttp3.Dispatcher;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.logging.HttpLoggingInterceptor;
+import okio.ByteString;
 
 /**
  * Created by Max Toyberman on 2/11/18.
@@ -51,65 +53,227 @@ public class OkHttpUtils {
     private static final String HEADERS_KEY = "headers";
     private static final String BODY_KEY = "body";
     private static final String METHOD_KEY = "method";
-    private static final HashMap<String, OkHttpClient> clientsByDomain = new HashMap<>();
-    private static SSLContext sslContext;
+    // Replaced by configure(); profile clients derive from it and share its pool and dispatcher
+    private static volatile OkHttpClient sharedClient = new OkHttpClient();
+    private static final ConcurrentHashMap<ClientProfile, FutureTask<OkHttpClient>> clientsByProfile = new ConcurrentHashMap<>();
+    private static TrustManager[] trustAllManagers;
+    private static SSLSocketFactory trustAllSocketFactory;
+    private static final ConcurrentHashMap<String, Cache> cachesByProfile = new ConcurrentHashMap<>();
+    private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    // Below this size the gzip header and trailer eat most of the savings
+    private static final long MIN_COMPRESSED_BODY_BYTES = 1024;
+    private static final long DEFAULT_CACHE_SIZE = 10L * 1024 * 1024;
+    private static final CacheControl CACHE_FIRST = new CacheControl.Builder().maxStale(Integer.MAX_VALUE, TimeUnit.SECONDS).build();
+    private static final CacheControl CACHE_ONLY = new CacheControl.Builder().onlyIfCached().maxStale(Integer.MAX_VALUE, TimeUnit.SECONDS).build();
+    private static final CacheControl REVALIDATE = new CacheControl.Builder().maxAge(0, TimeUnit.SECONDS).build();
+    private static File cacheRoot;
     private static String content_type = "application/json; charset=utf-8";
     public static MediaType mediaType = MediaType.parse(content_type);
     public static Boolean enableDebugLogging = false;
 
     public static OkHttpClient buildOkHttpClient(CookieJar cookieJar, String domainName, List<String> certs, JSONObject options) throws JSONException, CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException, KeyManagementException {
+        boolean pkPinning = options.has("pkPinning") && options.getBoolean("pkPinning");
+        ClientProfile profile = new ClientProfile(
+                domainName,
+                pkPinning ? ClientProfile.PinningMode.PUBLIC_KEY : ClientProfile.PinningMode.CERTIFICATE,
+                certs,
+                options.optBoolean("followRedirects", false),
+                enableDebugLogging,
+                getCacheSize(options)
+        );
+        return getOrBuildClient(profile, cookieJar);
+    }
+
+    /**
+     * Returns the client registered for the given profile, building it if this is the first request for it.
+     * Concurrent callers asking for the same profile wait on a single build instead of racing each other.
+     */
+    private static OkHttpClient getOrBuildClient(ClientProfile profile, CookieJar cookieJar) throws CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException, KeyManagementException {
+        while (true) {
+            FutureTask<OkHttpClient> task = clientsByProfile.get(profile);
+            if (task == null) {
+                FutureTask<OkHttpClient> newTask = new FutureTask<>(() -> createClient(profile, cookieJar));
+                task = clientsByProfile.putIfAbsent(profile, newTask);
+                if (task == null) {
+                    task = newTask;
+                    task.run();
+                }
+            }
+            OkHttpClient client = awaitClient(profile, task);
+            // Every client shares the dispatcher of the base it was derived from, and configure()
+            // always installs a new one. A build that raced configure() is dropped and redone.
+            if (client.dispatcher() == sharedClient.dispatcher()) return client;
+            clientsByProfile.remove(profile, task);
+        }
+    }
+
+    private static OkHttpClient awaitClient(ClientProfile profile, FutureTask<OkHttpClient> task) throws CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException, KeyManagementException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building client for " + profile.getDomain(), e);
+        } catch (ExecutionException e) {
+            // Allow a later request to retry the build instead of caching the failure
+            clientsByProfile.remove(profile, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof CertificateException) throw (CertificateException) cause;
+            if (cause instanceof NoSuchAlgorithmException) throw (NoSuchAlgorithmException) cause;
+            if (cause instanceof KeyStoreException) throw (KeyStoreException) cause;
+            if (cause instanceof KeyManagementException) throw (KeyManagementException) cause;
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException("Failed to build client for " + profile, cause);
+        }
+    }
 
-        OkHttpClient client = null;
-        if (!clientsByDomain.containsKey(domainName)) {
-            OkHttpClient.Builder clientBuilder = applyCommonClientConfig(new OkHttpClient.Builder(), cookieJar, options);
+    private static OkHttpClient createClient(ClientProfile profile, CookieJar cookieJar) throws CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException, KeyManagementException {
+        // Deriving from the shared client keeps one ConnectionPool and Dispatcher across every profile
+        OkHttpClient.Builder clientBuilder = applyCommonClientConfig(sharedClient.newBuilder(), cookieJar, profile);
 
-            if (options.has("pkPinning") && options.getBoolean("pkPinning")) {
+        switch (profile.getPinningMode()) {
+            case PUBLIC_KEY:
                 // public key pinning
-                clientBuilder.certificatePinner(initPublicKeyPinning(certs, domainName));
-            } else {
+                clientBuilder.certificatePinner(initPublicKeyPinning(profile.getCerts(), profile.getDomain()));
+                break;
+            case CERTIFICATE:
                 // ssl pinning
-                X509TrustManager manager = initSSLPinning(certs);
+                CertificateStore.PinnedTrust pinnedTrust = CertificateStore.getPinnedTrust(profile.getCerts());
                 clientBuilder
-                        .sslSocketFactory(sslContext.getSocketFactory(), manager);
-            }
-            if (enableDebugLogging)
-                applyDebugLogging(clientBuilder);
+                        .sslSocketFactory(pinnedTrust.getSocketFactory(), pinnedTrust.getTrustManager());
+                break;
+            case TRUST_ALL:
+                TrustManager[] trustAllCerts = getTrustAllManagers();
+                clientBuilder
+                        .sslSocketFactory(getTrustAllSocketFactory(trustAllCerts), (X509TrustManager) trustAllCerts[0])
+                        .hostnameVerifier((hostname, session) -> true);
+                break;
+            case NONE:
+            default:
+                break;
+        }
 
-            client = clientBuilder
-                    .build();
+        if (profile.getCacheSize() > 0 && cacheRoot != null)
+            clientBuilder.cache(getCache(profile));
 
-            clientsByDomain.put(domainName, client);
-        } else {
-            client = clientsByDomain.get(domainName);
-        }
+        if (profile.isDebugLogging())
+            applyDebugLogging(clientBuilder);
 
-        return applyTimeoutsIfPresent(client, options);
+        return clientBuilder.build();
     }
 
     public static OkHttpClient buildDefaultOkHttpClient(CookieJar cookieJar, String ignoredDomainName, JSONObject options) throws JSONException {
         boolean disableAllSecurity = options.optBoolean("disableAllSecurity", false);
+        // Unpinned clients do not depend on the domain, so every host shares a single registry entry
+        ClientProfile profile = new ClientProfile(
+                null,
+                disableAllSecurity ? ClientProfile.PinningMode.TRUST_ALL : ClientProfile.PinningMode.NONE,
+                null,
+                options.optBoolean("followRedirects", false),
+                enableDebugLogging,
+                getCacheSize(options)
+        );
+        try {
+            return getOrBuildClient(profile, cookieJar);
+        } catch (Exception e) {
+            throw new RuntimeException(disableAllSecurity ? "Failed to create a trust-all OkHttp client" : "Failed to create an OkHttp client", e);
+        }
+    }
 
-        OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder();
+    /**
+     * Rebuilds the shared connection pool and dispatcher from the given limits and drops every
+     * registered client, so later requests are built on the new settings. Calls already in flight
+     * finish on the clients they started with.
+     */
+    public static synchronized void configure(JSONObject config) throws JSONException {
+        OkHttpClient previous = sharedClient;
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(config.optInt("maxRequests", previous.dispatcher().getMaxRequests()));
+        dispatcher.setMaxRequestsPerHost(config.optInt("maxRequestsPerHost", previous.dispatcher().getMaxRequestsPerHost()));
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(
+                        config.optInt("maxIdleConnections", DEFAULT_MAX_IDLE_CONNECTIONS),
+                        config.optLong("keepAliveDuration", DEFAULT_KEEP_ALIVE_MILLIS),
+                        TimeUnit.MILLISECONDS
+                ));
+        if (config.has("protocols")) {
+            builder.protocols(parseProtocols(config.getJSONArray("protocols")));
+        }
+        sharedClient = builder.build();
+        clientsByProfile.clear();
+        // Idle connections of the old pool would otherwise linger until their keep-alive expires
+        previous.connectionPool().evictAll();
+    }
 
-        if (disableAllSecurity) {
+    private static List<Protocol> parseProtocols(JSONArray names) throws JSONException {
+        List<Protocol> protocols = new ArrayList<>();
+        for (int i = 0; i < names.length(); i++) {
             try {
-                TrustManager[] trustAllCerts = SSLSecurityUtils.getTrustAllManagers();
-                SSLSocketFactory sslSocketFactory = SSLSecurityUtils.getTrustAllSSLSocketFactory(trustAllCerts);
-
-                clientBuilder = new OkHttpClient.Builder()
-                        .sslSocketFactory(sslSocketFactory, (X509TrustManager) trustAllCerts[0])
-                        .hostnameVerifier((hostname, session) -> true);
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to create a trust-all OkHttp client", e);
+                protocols.add(Protocol.get(names.getString(i)));
+            } catch (IOException e) {
+                throw new JSONException("Unknown protocol: " + names.getString(i));
             }
         }
+        // OkHttp needs HTTP/1.1 as the fallback for servers that do not negotiate HTTP/2
+        if (!protocols.contains(Protocol.HTTP_1_1)) {
+            protocols.add(Protocol.HTTP_1_1);
+        }
+        return protocols;
+    }
 
-        clientBuilder = applyCommonClientConfig(clientBuilder, cookieJar, options);
+    /**
+     * Sets the directory under which every cache-enabled profile keeps its own HTTP disk cache.
+     */
+    public static void setCacheDirectory(File directory) {
+        cacheRoot = directory;
+    }
 
-        if (enableDebugLogging)
-            applyDebugLogging(clientBuilder);
+    /**
+     * Applies the request's {@code cachePolicy} to a request built by {@link #buildRequest}.
+     * {@code stale-while-revalidate} is handled by the caller, see {@link #cacheOnly} and {@link #revalidate}.
+     */
+    public static Request applyCachePolicy(Request request, JSONObject options) {
+        switch (options.optString("cachePolicy", "default")) {
+            case "network-only":
+                return request.newBuilder().cacheControl(CacheControl.FORCE_NETWORK).build();
+            case "cache-first":
+                return request.newBuilder().cacheControl(CACHE_FIRST).build();
+            default:
+                return request;
+        }
+    }
+
+    /**
+     * @return a copy of the request that is answered from the cache regardless of staleness, or with 504 on a miss
+     */
+    public static Request cacheOnly(Request request) {
+        return request.newBuilder().cacheControl(CACHE_ONLY).tag(RequestMetrics.class, new RequestMetrics()).build();
+    }
+
+    /**
+     * @return a copy of the request that forces a conditional revalidation against the server
+     */
+    public static Request revalidate(Request request) {
+        return request.newBuilder().cacheControl(REVALIDATE).tag(RequestMetrics.class, new RequestMetrics()).build();
+    }
 
-        return applyTimeoutsIfPresent(clientBuilder.build(), options);
+    private static long getCacheSize(JSONObject options) {
+        if (!options.has("cachePolicy")) return 0;
+        return Math.max(0, options.optLong("cacheMaxSize", DEFAULT_CACHE_SIZE));
+    }
+
+    private static Cache getCache(ClientProfile profile) {
+        String key = ByteString.encodeUtf8(profile.getCacheKey()).sha256().hex();
+        Cache cache = cachesByProfile.get(key);
+        if (cache == null) {
+            Cache newCache = new Cache(new File(cacheRoot, key), profile.getCacheSize());
+            cache = cachesByProfile.putIfAbsent(key, newCache);
+            if (cache == null) cache = newCache;
+        }
+        return cache;
     }
 
     public static void applyDebugLogging(OkHttpClient.Builder builder) {
@@ -118,68 +282,57 @@ public class OkHttpUtils {
         builder.addInterceptor(logging);
     }
 
-    private static OkHttpClient applyTimeoutsIfPresent(OkHttpClient client, JSONObject options) throws JSONException {
-        if (!options.has("timeoutInterval")) return client;
-
-        int timeout = options.getInt("timeoutInterval");
-
-        return client.newBuilder()
-                .readTimeout(timeout, TimeUnit.MILLISECONDS)
-                .callTimeout(timeout, TimeUnit.MILLISECONDS)
-                .writeTimeout(timeout, TimeUnit.MILLISECONDS)
-                .connectTimeout(timeout, TimeUnit.MILLISECONDS)
-                .build();
+    /**
+     * Creates the call for a request and applies its per-request call timeout, so requests with a
+     * {@code timeoutInterval} do not need a client of their own.
+     */
+    public static Call newCall(OkHttpClient client, Request request) {
+        Call call = client.newCall(request);
+        TimeoutInterceptor.Timeout timeout = request.tag(TimeoutInterceptor.Timeout.class);
+        if (timeout != null && timeout.getMillis() > 0) {
+            call.timeout().timeout(timeout.getMillis(), TimeUnit.MILLISECONDS);
+        }
+        return call;
     }
 
-    private static OkHttpClient.Builder applyCommonClientConfig(OkHttpClient.Builder builder, CookieJar cookieJar, JSONObject options) {
-        boolean followRedirects = options.optBoolean("followRedirects", false);
+    private static OkHttpClient.Builder applyCommonClientConfig(OkHttpClient.Builder builder, CookieJar cookieJar, ClientProfile profile) {
         return builder
                 .cookieJar(cookieJar)
-                .followRedirects(followRedirects)
-                .followSslRedirects(followRedirects);
+                .followRedirects(profile.isFollowRedirects())
+                .followSslRedirects(profile.isFollowRedirects())
+                .eventListenerFactory(MetricsEventListener.FACTORY)
+                .addInterceptor(new RetryInterceptor())
+                .addInterceptor(new TimeoutInterceptor())
+                .addInterceptor(new DecompressionInterceptor());
     }
 
-    private static CertificatePinner initPublicKeyPinning(List<String> pins, String domain) {
-        CertificatePinner.Builder certificatePinnerBuilder = new CertificatePinner.Builder();
-        //add all keys to the certificates pinner
-        for (int i = 0; i < pins.size(); i++) {
-            certificatePinnerBuilder.add(domain, pins.get(i));
+    private static synchronized TrustManager[] getTrustAllManagers() {
+        if (trustAllManagers == null) {
+            trustAllManagers = SSLSecurityUtils.getTrustAllManagers();
         }
-        return certificatePinnerBuilder.build();
+        return trustAllManagers;
     }
 
-    private static X509TrustManager initSSLPinning(List<String> certs) throws NoSuchAlgorithmException, CertificateException, KeyStoreException, IOException, KeyManagementException {
-        X509TrustManager trustManager = null;
-        sslContext = SSLContext.getInstance("TLS");
-        CertificateFactory cf = CertificateFactory.getInstance("X.509");
-        String keyStoreType = KeyStore.getDefaultType();
-        KeyStore keyStore = KeyStore.getInstance(keyStoreType);
-        keyStore.load(null, null);
-
-        for (int i = 0; i < certs.size(); i++) {
-            String filename = certs.get(i);
-            InputStream caInput = new BufferedInputStream(Objects.requireNonNull(OkHttpUtils.class.getClassLoader()).getResourceAsStream("assets/" + filename + ".cer"));
-            Certificate ca;
+    private static synchronized SSLSocketFactory getTrustAllSocketFactory(TrustManager[] trustManagers) throws KeyManagementException, NoSuchAlgorithmException {
+        if (trustAllSocketFactory == null) {
             try {
-                ca = cf.generateCertificate(caInput);
-            } finally {
-                caInput.close();
+                trustAllSocketFactory = SSLSecurityUtils.getTrustAllSSLSocketFactory(trustManagers);
+            } catch (KeyManagementException | NoSuchAlgorithmException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
             }
-            keyStore.setCertificateEntry(filename, ca);
         }
+        return trustAllSocketFactory;
+    }
 
-        String tmfAlgorithm = TrustManagerFactory.getDefaultAlgorithm();
-        TrustManagerFactory tmf = TrustManagerFactory.getInstance(tmfAlgorithm);
-        tmf.init(keyStore);
-
-        TrustManager[] trustManagers = tmf.getTrustManagers();
-        if (trustManagers.length != 1 || !(trustManagers[0] instanceof X509TrustManager)) {
-            throw new IllegalStateException("Unexpected default trust managers:" + Arrays.toString(trustManagers));
+    private static CertificatePinner initPublicKeyPinning(List<String> pins, String domain) {
+        CertificatePinner.Builder certificatePinnerBuilder = new CertificatePinner.Builder();
+        //add all keys to the certificates pinner
+        for (int i = 0; i < pins.size(); i++) {
+            certificatePinnerBuilder.add(domain, pins.get(i));
         }
-        trustManager = (X509TrustManager) trustManagers[0];
-
-        sslContext.init(null, new TrustManager[]{trustManager}, null);
-        return trustManager;
+        return certificatePinnerBuilder.build();
     }
 
     private static boolean isFilePart(JSONArray part) throws JSONException {
@@ -190,22 +343,32 @@ public class OkHttpUtils {
         return value.has("type") && (value.has("uri") || value.has("path") || value.has("data"));
     }
 
-    private static void addFormDataPart(Context context, MultipartBody.Builder multipartBodyBuilder, JSONObject fileData, String key) throws JSONException, IOException {
+    private static void addFormDataPart(Context context, TempFileManager.Scope tempFiles, MultipartBody.Builder multipartBodyBuilder, JSONObject fileData, String key) throws JSONException, IOException {
         String type = fileData.optString("type", "application/octet-stream");
         String fileName = fileData.optString("fileName", fileData.optString("name", "upload.bin"));
 
         if (fileData.has("data")) {
             // Handle base64 file
             String base64Data = fileData.getString("data");
-            byte[] fileBytes = android.util.Base64.decode(base64Data, android.util.Base64.DEFAULT);
-            RequestBody fileBody = RequestBody.create(fileBytes, MediaType.parse(type));
+            RequestBody fileBody = Base64Streams.decodingRequestBody(base64Data, MediaType.parse(type));
             multipartBodyBuilder.addFormDataPart(key, fileName, fileBody);
         } else if (fileData.has("uri") || fileData.has("path")) {
             // Handle native file
-            Uri fileUri = Uri.parse(fileData.optString("uri", fileData.optString("path", "")));
+            String location = fileData.optString("uri", fileData.optString("path", ""));
+            Uri fileUri = Uri.parse(location);
             try {
-                File file = getTempFile(context, fileUri);
-                RequestBody fileBody = RequestBody.create(file, MediaType.parse(type));
+                RequestBody fileBody;
+                if (fileUri.getScheme() == null) {
+                    // Plain filesystem path
+                    fileBody = RequestBody.create(new File(location), MediaType.parse(type));
+                } else {
+                    fileBody = ContentUriRequestBody.create(context, fileUri, MediaType.parse(type));
+                    if (fileBody == null) {
+                        // Provider cannot be opened as a descriptor, copy through a temp file instead
+                        File file = getTempFile(context, fileUri, tempFiles);
+                        fileBody = RequestBody.create(file, MediaType.parse(type));
+                    }
+                }
                 multipartBodyBuilder.addFormDataPart(key, fileName, fileBody);
             } catch (IOException e) {
                 throw new IOException(e);
@@ -215,7 +378,7 @@ public class OkHttpUtils {
         }
     }
 
-    private static RequestBody buildFormDataRequestBody(Context context, JSObject formData) throws JSONException, IOException {
+    private static RequestBody buildFormDataRequestBody(Context context, TempFileManager.Scope tempFiles, JSObject formData) throws JSONException, IOException {
         MultipartBody.Builder multipartBodyBuilder = new MultipartBody.Builder().setType(MultipartBody.FORM);
         multipartBodyBuilder.setType((Objects.requireNonNull(MediaType.parse("multipart/form-data"))));
         if (formData.has("_parts")) {
@@ -230,7 +393,7 @@ public class OkHttpUtils {
                     key = String.valueOf(part.getInt(0));
                 }
                 if (isFilePart(part)) {
-                    addFormDataPart(context, multipartBodyBuilder, Objects.requireNonNull(part.getJSONObject(1)), key);
+                    addFormDataPart(context, tempFiles, multipartBodyBuilder, Objects.requireNonNull(part.getJSONObject(1)), key);
                 } else {
                     String value = part.getString(1);
                     multipartBodyBuilder.addFormDataPart(key, Objects.requireNonNull(value));
@@ -240,7 +403,7 @@ public class OkHttpUtils {
         return multipartBodyBuilder.build();
     }
 
-    public static Request buildRequest(Context context, JSObject options, String hostname) throws JSONException, IOException {
+    public static Request buildRequest(Context context, TempFileManager.Scope tempFiles, JSObject options, String hostname) throws JSONException, IOException {
 
         Request.Builder requestBuilder = new Request.Builder();
         RequestBody body = null;
@@ -259,26 +422,54 @@ public class OkHttpUtils {
             Class<?> aClass = options.get(BODY_KEY).getClass();
             if (aClass.equals(String.class)) {
                 body = RequestBody.create(Objects.requireNonNull(options.getString(BODY_KEY)), mediaType);
+                body = compressIfRequested(body, options, requestBuilder);
             } else if (aClass.equals(JSONObject.class)) {
                 JSObject bodyMap = JSObject.fromJSONObject(options.getJSONObject(BODY_KEY));
                 if (bodyMap.has("formData")) {
                     JSObject formData = JSObject.fromJSONObject(bodyMap.getJSONObject("formData"));
-                    body = buildFormDataRequestBody(context, formData);
+                    body = buildFormDataRequestBody(context, tempFiles, formData);
                 } else if (bodyMap.has("_parts")) {
-                    body = buildFormDataRequestBody(context, bodyMap);
+                    body = buildFormDataRequestBody(context, tempFiles, bodyMap);
                 }
             }
         }
+        JSONObject retry = options.optJSONObject("retry");
+        if (retry != null) {
+            requestBuilder.tag(RetryInterceptor.Policy.class, RetryInterceptor.Policy.fromJSON(retry));
+        }
+        if (options.optBoolean("acceptBrotli", false)) {
+            requestBuilder.tag(DecompressionInterceptor.Encodings.class, DecompressionInterceptor.Encodings.BROTLI);
+        }
+        if (options.has("timeoutInterval")) {
+            requestBuilder.tag(TimeoutInterceptor.Timeout.class, new TimeoutInterceptor.Timeout(options.getLong("timeoutInterval")));
+        }
         return requestBuilder
+                .tag(RequestMetrics.class, new RequestMetrics())
                 .url(hostname)
                 .method(Objects.requireNonNull(method), body)
                 .build();
     }
 
-    public static File getTempFile(Context context, Uri uri) throws IOException {
-        File tempFile = File.createTempFile("upload_", ".tmp", context.getCacheDir());
+    /**
+     * Wraps a string body in the encoding asked for by {@code compressRequestBody}, unless it is too
+     * small for compression to pay off. Multipart bodies are left alone, their file parts are
+     * usually compressed formats already.
+     */
+    private static RequestBody compressIfRequested(RequestBody body, JSONObject options, Request.Builder requestBuilder) throws JSONException, IOException {
+        String encoding = options.optString("compressRequestBody", "");
+        if (encoding.isEmpty() || body.contentLength() < MIN_COMPRESSED_BODY_BYTES) {
+            return body;
+        }
+        if (!CompressedRequestBody.isSupported(encoding)) {
+            throw new JSONException("Unsupported compressRequestBody: " + encoding);
+        }
+        requestBuilder.header("Content-Encoding", encoding);
+        return new CompressedRequestBody(body, encoding);
+    }
+
+    public static File getTempFile(Context context, Uri uri, TempFileManager.Scope tempFiles) throws IOException {
+        File tempFile = tempFiles.createFile(context.getCacheDir());
         Utilities.copyInputStreamToFile(context.getContentResolver().openInputStream(uri), tempFile);
-        TempFileManager.registerTempFile(tempFile);
         return tempFile;
     }
 
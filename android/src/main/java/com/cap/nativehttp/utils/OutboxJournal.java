@@ -0,0 +1,133 @@
+// OutboxJournal.java
+package com.cap.nativehttp.utils;
+
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only on-disk journal of the offline outbox. Every line is one record:
+ * {@code A<TAB>id<TAB>url<TAB>options-json} queues a request and {@code D<TAB>id} marks it as
+ * delivered or given up. Both records are synced to disk before they take effect, so a request
+ * reported as queued survives a crash and a finished one is not replayed after it. Request bodies
+ * are stored as the options describe them: files and content URIs by reference, never copied.
+ */
+public class OutboxJournal {
+
+    private static final String TAG = "OutboxJournal";
+
+    /**
+     * A queued request.
+     */
+    public static final class Entry {
+        final String id;
+        final String url;
+        final JSObject options;
+
+        Entry(String id, String url, JSObject options) {
+            this.id = id;
+            this.url = url;
+            this.options = options;
+        }
+    }
+
+    private final File file;
+
+    public OutboxJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the queued requests that were not marked done, in the order they were queued
+     */
+    public synchronized List<Entry> read() {
+        Map<String, Entry> pending = new LinkedHashMap<>();
+        if (!file.exists()) return new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 4);
+                if (fields.length == 4 && "A".equals(fields[0])) {
+                    try {
+                        pending.put(fields[1], new Entry(fields[1], fields[2], new JSObject(fields[3])));
+                    } catch (JSONException e) {
+                        Log.w(TAG, "Skipping unreadable outbox entry " + fields[1], e);
+                    }
+                } else if (fields.length == 2 && "D".equals(fields[0])) {
+                    pending.remove(fields[1]);
+                }
+                // Anything else is a torn write from a crash and is skipped
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read outbox journal", e);
+        }
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * Appends a queued request and waits until it is on disk.
+     */
+    public synchronized void appendAdd(Entry entry) throws IOException {
+        // JSON serialization escapes line breaks, so the options always stay on one line
+        write("A\t" + entry.id + "\t" + entry.url + "\t" + entry.options + "\n");
+    }
+
+    /**
+     * Marks a request as finished and waits until the record is on disk, so a crash cannot replay it.
+     */
+    public synchronized void appendDone(String id) {
+        try {
+            write("D\t" + id + "\n");
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to mark outbox entry " + id + " as done", e);
+        }
+    }
+
+    /**
+     * Replaces the journal with the given pending requests, dropping every finished record.
+     */
+    public synchronized void rewrite(Collection<Entry> pending) {
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                for (Entry entry : pending) {
+                    out.write(("A\t" + entry.id + "\t" + entry.url + "\t" + entry.options + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                out.getFD().sync();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Failed to replace " + file);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to compact outbox journal", e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+
+    private void write(String line) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to create " + parent);
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(line.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+    }
+}
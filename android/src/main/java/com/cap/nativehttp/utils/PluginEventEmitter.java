@@ -0,0 +1,11 @@
+// PluginEventEmitter.java
+package com.cap.nativehttp.utils;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * Sends an event to JS listeners registered through {@code addListener}.
+ */
+public interface PluginEventEmitter {
+    void emit(String eventName, JSObject data);
+}
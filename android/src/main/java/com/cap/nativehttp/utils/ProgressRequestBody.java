@@ -0,0 +1,140 @@
+// ProgressRequestBody.java
+package com.cap.nativehttp.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.getcapacitor.JSObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+import okio.Sink;
+
+/**
+ * Forwards another request body while counting the bytes handed to the socket. Emits throttled
+ * {@code uploadProgress} events and, when a bandwidth limit is set, paces the writes so a
+ * background upload leaves room for other requests.
+ */
+public class ProgressRequestBody extends RequestBody {
+
+    public static final String EVENT_PROGRESS = "uploadProgress";
+    // Pacing granularity: the limiter sleeps at most once per slice
+    private static final long SLICE_BYTES = 8 * 1024;
+
+    private final RequestBody delegate;
+    @Nullable
+    private final PluginEventEmitter emitter;
+    private final String requestId;
+    private final String url;
+    private final long bytesPerSecond;
+
+    private ProgressRequestBody(RequestBody delegate, @Nullable PluginEventEmitter emitter, String requestId, String url, long bytesPerSecond) {
+        this.delegate = delegate;
+        this.emitter = emitter;
+        this.requestId = requestId;
+        this.url = url;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Wraps the body of the request when the options ask for upload progress or a bandwidth limit.
+     */
+    public static Request wrap(Request request, PluginEventEmitter emitter, String requestId, boolean reportProgress, long bytesPerSecond) {
+        RequestBody body = request.body();
+        if (body == null || (!reportProgress && bytesPerSecond <= 0)) return request;
+        ProgressRequestBody progressBody = new ProgressRequestBody(
+                body,
+                reportProgress ? emitter : null,
+                requestId,
+                request.url().toString(),
+                Math.max(0, bytesPerSecond)
+        );
+        return request.newBuilder().method(request.method(), progressBody).build();
+    }
+
+    @Nullable
+    @Override
+    public MediaType contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public boolean isOneShot() {
+        return delegate.isOneShot();
+    }
+
+    @Override
+    public void writeTo(@NonNull BufferedSink sink) throws IOException {
+        // A retried or logged body is written again, so every write starts counting from zero
+        CountingSink counting = new CountingSink(sink, contentLength());
+        BufferedSink buffered = Okio.buffer(counting);
+        delegate.writeTo(buffered);
+        buffered.flush();
+        counting.emit();
+    }
+
+    private final class CountingSink extends ForwardingSink {
+        private final long totalBytes;
+        private final FileDownloader.ProgressThrottle throttle = new FileDownloader.ProgressThrottle();
+        private final long startNanos = System.nanoTime();
+        private long bytesSent;
+
+        CountingSink(Sink delegate, long totalBytes) {
+            super(delegate);
+            this.totalBytes = totalBytes;
+        }
+
+        @Override
+        public void write(@NonNull Buffer source, long byteCount) throws IOException {
+            long remaining = byteCount;
+            while (remaining > 0) {
+                long slice = bytesPerSecond > 0 ? Math.min(remaining, SLICE_BYTES) : remaining;
+                pace(slice);
+                super.write(source, slice);
+                bytesSent += slice;
+                remaining -= slice;
+                if (emitter != null && throttle.ready()) emit();
+            }
+        }
+
+        /**
+         * Sleeps until sending {@code next} more bytes keeps the average rate under the limit.
+         */
+        private void pace(long next) throws IOException {
+            if (bytesPerSecond <= 0) return;
+            long dueMillis = (bytesSent + next) * 1000 / bytesPerSecond;
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+            if (dueMillis > elapsedMillis) {
+                try {
+                    Thread.sleep(dueMillis - elapsedMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Upload interrupted");
+                }
+            }
+        }
+
+        void emit() {
+            if (emitter == null) return;
+            JSObject progress = new JSObject();
+            progress.put("requestId", requestId);
+            progress.put("url", url);
+            progress.put("bytesSent", bytesSent);
+            progress.put("totalBytes", totalBytes);
+            emitter.emit(EVENT_PROGRESS, progress);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+// RequestCoalescer.java
+package com.cap.nativehttp.utils;
+
+import androidx.annotation.Nullable;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+/**
+ * Single-flight layer for identical idempotent requests. While a GET/HEAD is in flight, further
+ * requests with the same client, URL, headers, response type, timeout, retry policy and metrics
+ * option wait for it instead of going to the network, and every waiter is answered with its own
+ * copy of the shared response.
+ */
+public class RequestCoalescer {
+
+    private final ConcurrentHashMap<Key, Flight> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Only requests that opt in with {@code coalesce: true}, have no body and produce a response
+     * that can be handed to several callers are coalesced.
+     */
+    public static boolean isEligible(Request request, JSONObject options) {
+        if (!options.optBoolean("coalesce", false) || request.body() != null) return false;
+        String method = request.method();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) return false;
+        String responseType = options.optString("responseType", "text");
+        return "text".equals(responseType) || "base64".equals(responseType);
+    }
+
+    /**
+     * Joins the flight for an identical request or starts a new one. When the returned ticket is the
+     * leader, the caller must send the request with {@link Ticket#getFlight()} as its callback and
+     * register the call through {@link Flight#setCall}.
+     */
+    public Ticket join(OkHttpClient client, Request request, JSONObject options, FetchCallback caller) {
+        Key key = new Key(client, request, options.optString("responseType", "text"), options.optBoolean("collectMetrics", false));
+        FetchCallback waiter = answeredAs(options.optString("requestId", ""), caller);
+        while (true) {
+            Flight flight = flights.get(key);
+            if (flight == null) {
+                Flight newFlight = new Flight(key, waiter);
+                flight = flights.putIfAbsent(key, newFlight);
+                if (flight == null) {
+                    return new Ticket(newFlight, waiter, true);
+                }
+            }
+            if (flight.addWaiter(waiter)) {
+                return new Ticket(flight, waiter, false);
+            }
+            // The flight completed between lookup and join, it removes itself from the map
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * Every waiter gets its own copy of the shared response, carrying its own request id.
+     */
+    private static FetchCallback answeredAs(String requestId, FetchCallback caller) {
+        return new FetchCallback() {
+            @Override
+            public void resolve(JSObject response) {
+                JSObject own = new JSObject();
+                Iterator<String> names = response.keys();
+                while (names.hasNext()) {
+                    String name = names.next();
+                    own.put(name, response.opt(name));
+                }
+                own.put("requestId", requestId);
+                caller.resolve(own);
+            }
+
+            @Override
+            public void reject(String message, @Nullable String code) {
+                caller.reject(message, code);
+            }
+        };
+    }
+
+    /**
+     * One caller's membership in a flight.
+     */
+    public static final class Ticket {
+        private final Flight flight;
+        private final FetchCallback waiter;
+        private final boolean leader;
+
+        Ticket(Flight flight, FetchCallback waiter, boolean leader) {
+            this.flight = flight;
+            this.waiter = waiter;
+            this.leader = leader;
+        }
+
+        public Flight getFlight() {
+            return flight;
+        }
+
+        public boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * Withdraws this caller. The shared network call is only cancelled once every waiter has left.
+         */
+        public void leave() {
+            flight.leave(waiter);
+        }
+    }
+
+    public final class Flight implements FetchCallback {
+        private final Key key;
+        private final List<FetchCallback> waiters = new ArrayList<>();
+        @Nullable
+        private Call call;
+        private boolean done;
+
+        Flight(Key key, FetchCallback leader) {
+            this.key = key;
+            this.waiters.add(leader);
+        }
+
+        public void setCall(Call call) {
+            boolean abandoned;
+            synchronized (this) {
+                this.call = call;
+                abandoned = done && waiters.isEmpty();
+            }
+            if (abandoned) call.cancel();
+        }
+
+        synchronized boolean addWaiter(FetchCallback waiter) {
+            if (done) return false;
+            waiters.add(waiter);
+            return true;
+        }
+
+        void leave(FetchCallback waiter) {
+            boolean last;
+            Call toCancel;
+            synchronized (this) {
+                if (done || !waiters.remove(waiter)) return;
+                last = waiters.isEmpty();
+                if (last) done = true;
+                toCancel = last ? call : null;
+            }
+            if (last) {
+                flights.remove(key, this);
+                if (toCancel != null) toCancel.cancel();
+            }
+            waiter.reject("Request canceled", "CANCELED");
+        }
+
+        private List<FetchCallback> complete() {
+            List<FetchCallback> snapshot;
+            synchronized (this) {
+                done = true;
+                snapshot = new ArrayList<>(waiters);
+                waiters.clear();
+            }
+            flights.remove(key, this);
+            return snapshot;
+        }
+
+        @Override
+        public void resolve(JSObject response) {
+            for (FetchCallback waiter : complete()) {
+                waiter.resolve(response);
+            }
+        }
+
+        @Override
+        public void reject(String message, @Nullable String code) {
+            for (FetchCallback waiter : complete()) {
+                waiter.reject(message, code);
+            }
+        }
+    }
+
+    private static final class Key {
+        private final OkHttpClient client;
+        private final String request;
+        private final int hashCode;
+
+        Key(OkHttpClient client, Request request, String responseType, boolean collectMetrics) {
+            // Header order does not change the response, so headers are compared sorted by name
+            TreeMap<String, List<String>> headers = new TreeMap<>(request.headers().toMultimap());
+            // A waiter must not inherit the leader's deadline or retries, so both are part of the key
+            TimeoutInterceptor.Timeout timeout = request.tag(TimeoutInterceptor.Timeout.class);
+            RetryInterceptor.Policy retry = request.tag(RetryInterceptor.Policy.class);
+            this.client = client;
+            this.request = request.method() + " " + request.url() + " " + responseType + " " + headers
+                    + " timeout=" + (timeout != null ? timeout.getMillis() : "none") + " retry=" + retry
+                    + " metrics=" + collectMetrics;
+            this.hashCode = Objects.hash(System.identityHashCode(client), this.request);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            return client == that.client && request.equals(that.request);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+// RequestMetrics.java
+package com.cap.nativehttp.utils;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * Phase timings of one call, recorded by {@link MetricsEventListener}. Attached to requests as a
+ * tag so the fetch pipeline can return them with the response. Timestamps are
+ * {@link System#nanoTime()} values, 0 when the phase did not happen.
+ */
+public class RequestMetrics {
+
+    long callStart;
+    long dnsStart;
+    long dnsEnd;
+    long connectStart;
+    long connectEnd;
+    long secureConnectStart;
+    long secureConnectEnd;
+    long requestStart;
+    long requestEnd;
+    long responseHeadersStart;
+    long responseBodyStart;
+    long responseBodyEnd;
+    long callEnd;
+    long bytesOut;
+    long bytesIn;
+    // Set by connectStart, consumed by the next connectionAcquired
+    boolean connecting;
+    boolean connectionReused;
+    boolean failed;
+    String host;
+    String protocol;
+
+    public JSObject toJSObject() {
+        JSObject metrics = new JSObject();
+        metrics.put("dnsMs", millis(dnsStart, dnsEnd));
+        metrics.put("connectMs", millis(connectStart, connectEnd));
+        metrics.put("tlsMs", millis(secureConnectStart, secureConnectEnd));
+        metrics.put("requestWriteMs", millis(requestStart, requestEnd));
+        metrics.put("ttfbMs", millis(requestStart, responseHeadersStart));
+        metrics.put("bodyReadMs", millis(responseBodyStart, responseBodyEnd));
+        metrics.put("totalMs", millis(callStart, callEnd != 0 ? callEnd : System.nanoTime()));
+        metrics.put("bytesOut", bytesOut);
+        metrics.put("bytesIn", bytesIn);
+        metrics.put("connectionReused", connectionReused);
+        if (protocol != null) metrics.put("protocol", protocol);
+        return metrics;
+    }
+
+    double dnsMillis() {
+        return millis(dnsStart, dnsEnd);
+    }
+
+    double connectMillis() {
+        return millis(connectStart, connectEnd);
+    }
+
+    double tlsMillis() {
+        return millis(secureConnectStart, secureConnectEnd);
+    }
+
+    double ttfbMillis() {
+        return millis(requestStart, responseHeadersStart);
+    }
+
+    double bodyReadMillis() {
+        return millis(responseBodyStart, responseBodyEnd);
+    }
+
+    double totalMillis() {
+        return millis(callStart, callEnd);
+    }
+
+    private static double millis(long start, long end) {
+        if (start == 0 || end == 0 || end < start) return 0;
+        return (end - start) / 1_000_000.0;
+    }
+}
@@ -0,0 +1,114 @@
+// RequestRegistry.java
+package com.cap.nativehttp.utils;
+
+import androidx.annotation.Nullable;
+
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Requests that are still waiting for their answer, by request id, so JS can cancel one of them
+ * or every request carrying a tag.
+ */
+public class RequestRegistry {
+
+    /**
+     * Stops whatever currently carries the request: a queued or running call, a coalesced flight
+     * membership or a segmented download.
+     */
+    public interface Cancellable {
+        void cancel();
+    }
+
+    private final class Entry implements FetchCallback {
+        final String requestId;
+        @Nullable
+        final String tag;
+        final FetchCallback callback;
+        @Nullable
+        private Cancellable cancellable;
+        private boolean cancelled;
+
+        Entry(String requestId, @Nullable String tag, FetchCallback callback) {
+            this.requestId = requestId;
+            this.tag = tag;
+            this.callback = callback;
+        }
+
+        void setCancellable(Cancellable cancellable) {
+            boolean cancelNow;
+            synchronized (this) {
+                this.cancellable = cancellable;
+                cancelNow = cancelled;
+            }
+            if (cancelNow) cancellable.cancel();
+        }
+
+        void cancel() {
+            Cancellable toCancel;
+            synchronized (this) {
+                cancelled = true;
+                toCancel = cancellable;
+            }
+            if (toCancel != null) toCancel.cancel();
+        }
+
+        @Override
+        public void resolve(JSObject response) {
+            entries.remove(requestId, this);
+            callback.resolve(response);
+        }
+
+        @Override
+        public void reject(String message, @Nullable String code) {
+            entries.remove(requestId, this);
+            callback.reject(message, code);
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a request and returns the callback to answer it through, which unregisters it.
+     */
+    public FetchCallback track(String requestId, @Nullable String tag, FetchCallback callback) {
+        Entry entry = new Entry(requestId, tag, callback);
+        entries.put(requestId, entry);
+        return entry;
+    }
+
+    /**
+     * Attaches what cancels the request once it has been sent. A cancel that arrived earlier is
+     * applied immediately.
+     */
+    public void setCancellable(FetchCallback tracked, Cancellable cancellable) {
+        if (tracked instanceof Entry) {
+            ((Entry) tracked).setCancellable(cancellable);
+        }
+    }
+
+    public boolean cancel(String requestId) {
+        Entry entry = entries.get(requestId);
+        if (entry == null) return false;
+        entry.cancel();
+        return true;
+    }
+
+    /**
+     * @return the number of requests that were cancelled
+     */
+    public int cancelAll(String tag) {
+        List<Entry> tagged = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (tag.equals(entry.tag)) tagged.add(entry);
+        }
+        for (Entry entry : tagged) {
+            entry.cancel();
+        }
+        return tagged.size();
+    }
+}
@@ -0,0 +1,150 @@
+// RequestScheduler.java
+package com.cap.nativehttp.utils;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+
+/**
+ * Priority queue in front of OkHttp's FIFO dispatcher. Each host gets as many calls in flight as
+ * the dispatcher allows per host; further calls wait here, ordered by priority and then by arrival,
+ * so a user-visible request overtakes queued prefetch and telemetry calls for the same host.
+ */
+public class RequestScheduler {
+
+    public enum Priority {
+        HIGH,
+        NORMAL,
+        LOW;
+
+        public static Priority parse(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return NORMAL;
+            }
+        }
+    }
+
+    private static final class Pending implements Comparable<Pending> {
+        final Call call;
+        final Callback callback;
+        final Priority priority;
+        final long sequence;
+
+        Pending(Call call, Callback callback, Priority priority, long sequence) {
+            this.call = call;
+            this.callback = callback;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Pending other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class HostQueue {
+        final PriorityQueue<Pending> pending = new PriorityQueue<>();
+        int running;
+    }
+
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private long sequence;
+
+    /**
+     * Sends the call now if its host has a free slot, otherwise queues it by priority.
+     */
+    public void enqueue(OkHttpClient client, Call call, Priority priority, Callback callback) {
+        String host = call.request().url().host();
+        synchronized (this) {
+            HostQueue queue = hosts.get(host);
+            if (queue == null) {
+                queue = new HostQueue();
+                hosts.put(host, queue);
+            }
+            queue.pending.add(new Pending(call, callback, priority, sequence++));
+        }
+        drain(client, host);
+    }
+
+    /**
+     * Removes a call that is still waiting for a slot and fails it right away.
+     *
+     * @return whether the call was still queued
+     */
+    public boolean cancel(Call call) {
+        Pending removed = null;
+        synchronized (this) {
+            HostQueue queue = hosts.get(call.request().url().host());
+            if (queue != null) {
+                for (Pending pending : queue.pending) {
+                    if (pending.call == call) {
+                        removed = pending;
+                        break;
+                    }
+                }
+                if (removed != null) queue.pending.remove(removed);
+            }
+        }
+        if (removed == null) return false;
+        call.cancel();
+        removed.callback.onFailure(call, new IOException("Canceled"));
+        return true;
+    }
+
+    private void drain(OkHttpClient client, String host) {
+        int limit = client.dispatcher().getMaxRequestsPerHost();
+        while (true) {
+            Pending next;
+            synchronized (this) {
+                HostQueue queue = hosts.get(host);
+                if (queue == null || queue.running >= limit || queue.pending.isEmpty()) {
+                    if (queue != null && queue.running == 0 && queue.pending.isEmpty()) hosts.remove(host);
+                    return;
+                }
+                next = queue.pending.poll();
+                queue.running++;
+            }
+            next.call.enqueue(new Callback() {
+                @Override
+                public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                    try {
+                        next.callback.onFailure(call, e);
+                    } finally {
+                        finished(client, host);
+                    }
+                }
+
+                @Override
+                public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
+                    // The slot is held until the body has been consumed by the callback
+                    try {
+                        next.callback.onResponse(call, response);
+                    } finally {
+                        finished(client, host);
+                    }
+                }
+            });
+        }
+    }
+
+    private void finished(OkHttpClient client, String host) {
+        synchronized (this) {
+            HostQueue queue = hosts.get(host);
+            if (queue != null) queue.running--;
+        }
+        drain(client, host);
+    }
+}
@@ -0,0 +1,97 @@
+// ResponseFileStore.java
+package com.cap.nativehttp.utils;
+
+import android.util.Log;
+import android.webkit.MimeTypeMap;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import okhttp3.MediaType;
+
+/**
+ * Managed directory for {@code responseType: 'fileUrl'} bodies. The WebView reads these files
+ * straight from Capacitor's local server, so the bytes never cross the JSON bridge. The directory
+ * is kept under a size budget by deleting the least recently delivered files first. Files still
+ * being written, and files delivered within the last {@link #GRACE_MS}, whose URL the page may be
+ * about to load, are never deleted.
+ */
+public class ResponseFileStore {
+
+    // Path prefix under which Capacitor's local server serves files from the device
+    private static final String FILE_SERVER_PATH = "/_capacitor_file_";
+    static final long GRACE_MS = 60_000;
+
+    private final File directory;
+    private final long maxBytes;
+    private final String localUrl;
+    // Guarded by this
+    private final Set<File> writing = new HashSet<>();
+
+    public ResponseFileStore(File directory, long maxBytes, String localUrl) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.localUrl = localUrl;
+    }
+
+    /**
+     * @return a new, uniquely named file for a response body, with an extension matching its type
+     */
+    public File newFile(@Nullable MediaType contentType) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w("NativeHttp", "Cannot create response directory: " + directory);
+        }
+        String extension = null;
+        if (contentType != null) {
+            extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(contentType.type() + "/" + contentType.subtype());
+        }
+        File file = new File(directory, UUID.randomUUID() + (extension != null ? "." + extension : ""));
+        synchronized (this) {
+            writing.add(file);
+        }
+        return file;
+    }
+
+    /**
+     * Deletes a file from {@link #newFile} whose body could not be written completely.
+     */
+    public synchronized void discard(File file) {
+        writing.remove(file);
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    /**
+     * @return the URL the WebView loads the file from
+     */
+    public String urlFor(File file) {
+        return localUrl + FILE_SERVER_PATH + file.getAbsolutePath();
+    }
+
+    /**
+     * Marks a file from {@link #newFile} as completely written, then deletes the oldest files until
+     * the directory fits the budget again. Recent files are kept even if that leaves the directory
+     * over budget for a while.
+     */
+    public synchronized void trim(File written) {
+        writing.remove(written);
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+
+        long total = 0;
+        for (File file : files) total += file.length();
+        long graceStart = System.currentTimeMillis() - GRACE_MS;
+        for (File file : files) {
+            if (total <= maxBytes) return;
+            if (file.equals(written) || writing.contains(file) || file.lastModified() >= graceStart) continue;
+            long length = file.length();
+            if (file.delete()) total -= length;
+        }
+    }
+}
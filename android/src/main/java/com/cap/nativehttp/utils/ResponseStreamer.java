@@ -0,0 +1,220 @@
+// ResponseStreamer.java
+package com.cap.nativehttp.utils;
+
+import androidx.annotation.Nullable;
+
+import com.getcapacitor.JSObject;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * Reads a response body incrementally and forwards it to JS as {@code streamChunk} events, so the
+ * payload is never buffered in full. When a window is configured, at most that many chunks may be
+ * unacknowledged by JS before reading pauses, and a stream that stays paused for
+ * {@link #ACK_TIMEOUT_MS} fails, so an abandoned stream cannot hold a network thread forever.
+ */
+public class ResponseStreamer {
+
+    public static final String EVENT_CHUNK = "streamChunk";
+    public static final String EVENT_END = "streamEnd";
+    public static final String EVENT_ERROR = "streamError";
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    // The longest UTF-8 sequence: a smaller chunk could fill up with an incomplete character and
+    // never emit anything
+    static final int MIN_CHUNK_SIZE = 4;
+    public static final long ACK_TIMEOUT_MS = 30_000;
+
+    private static final ConcurrentHashMap<String, ResponseStreamer> activeStreams = new ConcurrentHashMap<>();
+
+    private final String requestId;
+    private final PluginEventEmitter emitter;
+    private final int chunkSize;
+    private final boolean base64;
+    private final Semaphore credits;
+    private volatile boolean cancelled;
+    // Guarded by this: what stops the request before its headers arrive, then the call being read
+    @Nullable
+    private RequestRegistry.Cancellable beforeHeaders;
+    @Nullable
+    private Call call;
+
+    public ResponseStreamer(String requestId, PluginEventEmitter emitter, int chunkSize, String encoding, int window) {
+        this.requestId = requestId;
+        this.emitter = emitter;
+        this.chunkSize = effectiveChunkSize(chunkSize);
+        this.base64 = "base64".equals(encoding);
+        this.credits = window > 0 ? new Semaphore(window) : null;
+    }
+
+    /**
+     * Registers the stream before its request is sent, so {@link #cancel(String)} works while the
+     * request still waits for its headers.
+     *
+     * @return the callback to answer the request through, which unregisters the stream again when
+     * the request ends without streaming
+     */
+    public FetchCallback register(FetchCallback callback, RequestRegistry.Cancellable beforeHeaders) {
+        synchronized (this) {
+            this.beforeHeaders = beforeHeaders;
+        }
+        activeStreams.put(requestId, this);
+        return new FetchCallback() {
+            @Override
+            public void resolve(JSObject response) {
+                if (!isAttached()) activeStreams.remove(requestId, ResponseStreamer.this);
+                callback.resolve(response);
+            }
+
+            @Override
+            public void reject(String message, @Nullable String code) {
+                if (!isAttached()) activeStreams.remove(requestId, ResponseStreamer.this);
+                callback.reject(message, code);
+            }
+        };
+    }
+
+    /**
+     * @return the stream registered for the request, or null when there is none
+     */
+    @Nullable
+    public static ResponseStreamer registered(String requestId) {
+        return activeStreams.get(requestId);
+    }
+
+    /**
+     * Hands the stream the call whose body it will read, once the headers have arrived.
+     */
+    public void attach(Call call) {
+        synchronized (this) {
+            this.call = call;
+        }
+        if (cancelled) call.cancel();
+    }
+
+    private synchronized boolean isAttached() {
+        return call != null;
+    }
+
+    /**
+     * Streams the body on the calling thread until it is exhausted, failed or cancelled.
+     * Ends with exactly one {@code streamEnd} or {@code streamError} event.
+     */
+    public void stream(ResponseBody body) {
+        activeStreams.put(requestId, this);
+        long totalBytes = 0;
+        int sequence = 0;
+        try (BufferedSource source = body.source()) {
+            Buffer pending = new Buffer();
+            while (!cancelled) {
+                long read = source.read(pending, chunkSize - pending.size());
+                if (read == -1) break;
+                totalBytes += read;
+
+                long emitBytes = base64 ? pending.size() : utf8SafeLength(pending);
+                if (emitBytes == 0) continue;
+                if (credits != null && !credits.tryAcquire(ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("No streamAck within " + ACK_TIMEOUT_MS + " ms");
+                }
+                if (cancelled) break;
+
+                JSObject chunk = new JSObject();
+                chunk.put("requestId", requestId);
+                chunk.put("seq", sequence++);
+                chunk.put("data", base64
+                        ? android.util.Base64.encodeToString(pending.readByteArray(emitBytes), android.util.Base64.NO_WRAP)
+                        : pending.readUtf8(emitBytes));
+                emitter.emit(EVENT_CHUNK, chunk);
+            }
+            if (!cancelled && pending.size() > 0) {
+                // A truncated multi-byte sequence at the very end is flushed as-is
+                JSObject chunk = new JSObject();
+                chunk.put("requestId", requestId);
+                chunk.put("seq", sequence++);
+                chunk.put("data", base64
+                        ? android.util.Base64.encodeToString(pending.readByteArray(), android.util.Base64.NO_WRAP)
+                        : pending.readUtf8());
+                emitter.emit(EVENT_CHUNK, chunk);
+            }
+            JSObject end = new JSObject();
+            end.put("requestId", requestId);
+            end.put("bytes", totalBytes);
+            end.put("chunks", sequence);
+            end.put("cancelled", cancelled);
+            emitter.emit(EVENT_END, end);
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            JSObject error = new JSObject();
+            error.put("requestId", requestId);
+            error.put("message", cancelled ? "Canceled" : e.getMessage());
+            error.put("cancelled", cancelled);
+            emitter.emit(EVENT_ERROR, error);
+        } finally {
+            activeStreams.remove(requestId, this);
+        }
+    }
+
+    /**
+     * Returns credits to a stream after JS has consumed {@code count} chunks.
+     */
+    public static boolean acknowledge(String requestId, int count) {
+        ResponseStreamer streamer = activeStreams.get(requestId);
+        if (streamer == null) return false;
+        if (streamer.credits != null && count > 0) {
+            streamer.credits.release(count);
+        }
+        return true;
+    }
+
+    public static boolean cancel(String requestId) {
+        ResponseStreamer streamer = activeStreams.get(requestId);
+        if (streamer == null) return false;
+        streamer.cancelled = true;
+        Call call;
+        RequestRegistry.Cancellable beforeHeaders;
+        synchronized (streamer) {
+            call = streamer.call;
+            beforeHeaders = streamer.beforeHeaders;
+        }
+        if (call != null) {
+            call.cancel();
+        } else if (beforeHeaders != null) {
+            beforeHeaders.cancel();
+        }
+        if (streamer.credits != null) {
+            // Wake a reader blocked on backpressure so it can observe the cancellation
+            streamer.credits.release();
+        }
+        return true;
+    }
+
+    static int effectiveChunkSize(int chunkSize) {
+        return chunkSize > 0 ? Math.max(chunkSize, MIN_CHUNK_SIZE) : DEFAULT_CHUNK_SIZE;
+    }
+
+    /**
+     * Number of leading bytes in the buffer that end on a UTF-8 character boundary.
+     */
+    static long utf8SafeLength(Buffer buffer) {
+        long size = buffer.size();
+        for (long i = size - 1; i >= 0 && i >= size - 4; i--) {
+            int b = buffer.getByte(i) & 0xFF;
+            if ((b & 0xC0) == 0x80) continue;
+            int sequenceLength;
+            if (b < 0x80) sequenceLength = 1;
+            else if ((b & 0xE0) == 0xC0) sequenceLength = 2;
+            else if ((b & 0xF0) == 0xE0) sequenceLength = 3;
+            else if ((b & 0xF8) == 0xF0) sequenceLength = 4;
+            else sequenceLength = 1;
+            return size - i >= sequenceLength ? size : i;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,221 @@
+// RetryInterceptor.java
+package com.cap.nativehttp.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Retries failed attempts of requests that carry a {@link Policy} tag, with exponential backoff,
+ * jitter and {@code Retry-After}. Retries stay inside the call, so they reuse the pooled
+ * connection and the per-call timeout still bounds the whole sequence. A token budget per host
+ * stops retries when most recent attempts to that host fail, so an outage does not turn into a
+ * retry storm.
+ */
+public class RetryInterceptor implements Interceptor {
+
+    private static final List<String> IDEMPOTENT_METHODS = Arrays.asList("GET", "HEAD", "PUT", "DELETE", "OPTIONS", "TRACE");
+    private static final Set<Integer> DEFAULT_RETRY_STATUSES = new HashSet<>(Arrays.asList(408, 429, 502, 503, 504));
+    // Sleeping in slices lets a cancelled call stop waiting for its next attempt
+    private static final long SLEEP_SLICE_MS = 100;
+    private static final ConcurrentHashMap<String, Budget> budgets = new ConcurrentHashMap<>();
+
+    /**
+     * Request tag with the retry settings of one request.
+     */
+    public static final class Policy {
+        private final int maxAttempts;
+        private final long baseDelayMillis;
+        private final long maxDelayMillis;
+        private final boolean jitter;
+        private final Set<Integer> retryStatuses;
+        private final boolean retryNonIdempotent;
+
+        Policy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, boolean jitter, Set<Integer> retryStatuses, boolean retryNonIdempotent) {
+            this.maxAttempts = maxAttempts;
+            this.baseDelayMillis = baseDelayMillis;
+            this.maxDelayMillis = maxDelayMillis;
+            this.jitter = jitter;
+            this.retryStatuses = retryStatuses;
+            this.retryNonIdempotent = retryNonIdempotent;
+        }
+
+        /**
+         * Reads the {@code retry} request option.
+         */
+        public static Policy fromJSON(JSONObject retry) throws JSONException {
+            Set<Integer> statuses = DEFAULT_RETRY_STATUSES;
+            JSONArray statusArray = retry.optJSONArray("retryOnStatus");
+            if (statusArray != null) {
+                statuses = new HashSet<>();
+                for (int i = 0; i < statusArray.length(); i++) {
+                    statuses.add(statusArray.getInt(i));
+                }
+            }
+            return new Policy(
+                    Math.max(1, retry.optInt("maxAttempts", 3)),
+                    Math.max(0, retry.optLong("baseDelay", 300)),
+                    Math.max(0, retry.optLong("maxDelay", 10_000)),
+                    retry.optBoolean("jitter", true),
+                    statuses,
+                    retry.optBoolean("retryNonIdempotent", false)
+            );
+        }
+
+        // Equal policies print equally, which lets coalesced requests compare them
+        @NonNull
+        @Override
+        public String toString() {
+            return "Policy{maxAttempts=" + maxAttempts
+                    + ", baseDelay=" + baseDelayMillis
+                    + ", maxDelay=" + maxDelayMillis
+                    + ", jitter=" + jitter
+                    + ", retryOnStatus=" + new TreeSet<>(retryStatuses)
+                    + ", retryNonIdempotent=" + retryNonIdempotent + "}";
+        }
+    }
+
+    /**
+     * Token bucket per host, after gRPC's retry throttling: every failed attempt costs a token,
+     * every success returns a fraction of one, and retries stop while the bucket is at most half full.
+     */
+    private static final class Budget {
+        private static final double MAX_TOKENS = 10;
+        private static final double SUCCESS_CREDIT = 0.1;
+        private double tokens = MAX_TOKENS;
+
+        synchronized void onSuccess() {
+            tokens = Math.min(MAX_TOKENS, tokens + SUCCESS_CREDIT);
+        }
+
+        synchronized void onFailure() {
+            tokens = Math.max(0, tokens - 1);
+        }
+
+        synchronized boolean allowsRetry() {
+            return tokens > MAX_TOKENS / 2;
+        }
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        Policy policy = request.tag(Policy.class);
+        if (policy == null || policy.maxAttempts <= 1) {
+            return chain.proceed(request);
+        }
+        boolean retryable = (policy.retryNonIdempotent || IDEMPOTENT_METHODS.contains(request.method()))
+                && (request.body() == null || !request.body().isOneShot());
+        Budget budget = budgetFor(request.url().host());
+
+        for (int attempt = 1; ; attempt++) {
+            boolean lastAttempt = attempt >= policy.maxAttempts || !retryable;
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                // A cancelled call says nothing about the host, so it must not cost a token
+                if (chain.call().isCanceled()) throw e;
+                budget.onFailure();
+                if (lastAttempt || !budget.allowsRetry()) throw e;
+                sleep(chain, backoff(policy, attempt));
+                continue;
+            }
+
+            if (!policy.retryStatuses.contains(response.code())) {
+                budget.onSuccess();
+                return response;
+            }
+            budget.onFailure();
+            if (lastAttempt || !budget.allowsRetry()) return response;
+
+            long delay = retryDelay(policy, attempt, response.header("Retry-After"), System.currentTimeMillis());
+            if (delay < 0) return response;
+            response.close();
+            sleep(chain, delay);
+        }
+    }
+
+    private static Budget budgetFor(String host) {
+        Budget budget = budgets.get(host);
+        if (budget == null) {
+            Budget created = new Budget();
+            budget = budgets.putIfAbsent(host, created);
+            if (budget == null) budget = created;
+        }
+        return budget;
+    }
+
+    /**
+     * @return the pause before the next attempt after a retryable status: the backoff, stretched to
+     * the server's {@code Retry-After}, or -1 when the server asks for longer than the policy's
+     * maximum delay and the response should be returned instead
+     */
+    static long retryDelay(Policy policy, int attempt, @Nullable String retryAfterHeader, long now) {
+        long retryAfter = parseRetryAfter(retryAfterHeader, now);
+        if (retryAfter > policy.maxDelayMillis) return -1;
+        return Math.max(backoff(policy, attempt), retryAfter);
+    }
+
+    // Full jitter: a uniformly random delay up to the exponential backoff spreads out retrying clients
+    static long backoff(Policy policy, int attempt) {
+        long exponential = policy.baseDelayMillis << Math.min(attempt - 1, 30);
+        long delay = Math.min(policy.maxDelayMillis, exponential < 0 ? Long.MAX_VALUE : exponential);
+        return policy.jitter && delay > 0 ? ThreadLocalRandom.current().nextLong(delay + 1) : delay;
+    }
+
+    /**
+     * @return the delay asked for by a {@code Retry-After} header in milliseconds, or -1 when absent
+     */
+    static long parseRetryAfter(@Nullable String retryAfter, long now) {
+        if (retryAfter == null) return -1;
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException ignored) {
+            // Not delta-seconds, try an HTTP date
+        }
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            Date date = format.parse(retryAfter.trim());
+            return date != null ? Math.max(0, date.getTime() - now) : -1;
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    private static void sleep(Chain chain, long millis) throws IOException {
+        long deadline = System.currentTimeMillis() + millis;
+        try {
+            for (long left = millis; left > 0; left = deadline - System.currentTimeMillis()) {
+                if (chain.call().isCanceled()) throw new IOException("Canceled");
+                Thread.sleep(Math.min(left, SLEEP_SLICE_MS));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Retry interrupted");
+        }
+        if (chain.call().isCanceled()) throw new IOException("Canceled");
+    }
+}
@@ -0,0 +1,257 @@
+// SegmentedDownloader.java
+package com.cap.nativehttp.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Downloads a file as several byte ranges in parallel over the same client. A HEAD request learns
+ * the length and validator, the target is preallocated, and every segment writes its range in
+ * place with positional {@link FileChannel} writes, so nothing is stitched or copied afterwards.
+ */
+public class SegmentedDownloader {
+
+    public static final String OPT_SEGMENTS = "segments";
+    // Below this size per segment the extra round trips cost more than they gain
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+
+    public interface Callback {
+        /**
+         * Every segment was written; {@code head} carries the headers of the whole resource.
+         */
+        void onComplete(Response head, long size);
+
+        /**
+         * The server cannot serve ranges for this resource; nothing was written.
+         */
+        void onUnsupported();
+
+        void onFailure(String message);
+    }
+
+    private final OkHttpClient client;
+    private final Request request;
+    private final File target;
+    private final int segments;
+    @Nullable
+    private final FileDownloader.ProgressListener progress;
+    private final List<Call> calls = new ArrayList<>();
+    private final AtomicBoolean failed = new AtomicBoolean();
+    // Guarded by calls
+    @Nullable
+    private Call headCall;
+    private volatile boolean cancelled;
+
+    public SegmentedDownloader(OkHttpClient client, Request request, File target, int segments, @Nullable FileDownloader.ProgressListener progress) {
+        this.client = client;
+        this.request = request;
+        this.target = target;
+        // The dispatcher runs only so many calls per host, more segments would only queue
+        this.segments = Math.min(segments, client.dispatcher().getMaxRequestsPerHost());
+        this.progress = progress;
+    }
+
+    /**
+     * Resumable downloads take the single-stream path, which is the one that keeps a partial file
+     * across attempts.
+     */
+    public static boolean isEligible(Request request, JSONObject options) {
+        String responseType = options.optString("responseType", "text");
+        return options.optInt(OPT_SEGMENTS, 1) > 1
+                && !options.optBoolean("resumable", false)
+                && "GET".equals(request.method())
+                && ("file".equals(responseType) || "blob".equals(responseType));
+    }
+
+    public void start(Callback callback) {
+        // Ranges address the identity encoding, which OkHttp's transparent gzip would otherwise hide
+        Request head = request.newBuilder()
+                .head()
+                .header("Accept-Encoding", "identity")
+                .tag(RequestMetrics.class, new RequestMetrics())
+                .build();
+        Call probe = OkHttpUtils.newCall(client, head);
+        synchronized (calls) {
+            headCall = probe;
+            if (cancelled) probe.cancel();
+        }
+        probe.enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                callback.onFailure(e.getMessage());
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                response.close();
+                if (cancelled) {
+                    callback.onFailure("Canceled");
+                    return;
+                }
+                long length = parseLength(response.header("Content-Length"));
+                String validator = validatorOf(response);
+                if (!response.isSuccessful()
+                        || !"bytes".equalsIgnoreCase(response.header("Accept-Ranges"))
+                        || validator == null
+                        || length < MIN_SEGMENT_SIZE * 2) {
+                    callback.onUnsupported();
+                    return;
+                }
+                try {
+                    download(response, length, validator, callback);
+                } catch (IOException e) {
+                    FileDownloader.discardPartial(target);
+                    callback.onFailure(e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void download(Response head, long length, String validator, Callback callback) throws IOException {
+        int count = (int) Math.min(segments, length / MIN_SEGMENT_SIZE);
+        RandomAccessFile file = new RandomAccessFile(target, "rw");
+        file.setLength(length);
+        FileChannel channel = file.getChannel();
+
+        AtomicInteger remaining = new AtomicInteger(count);
+        AtomicLong written = new AtomicLong();
+        FileDownloader.ProgressThrottle throttle = new FileDownloader.ProgressThrottle();
+        long segmentSize = length / count;
+        synchronized (calls) {
+            if (cancelled) {
+                file.close();
+                throw new IOException("Canceled");
+            }
+            for (int i = 0; i < count; i++) {
+                long start = i * segmentSize;
+                long end = i == count - 1 ? length - 1 : start + segmentSize - 1;
+                Request range = request.newBuilder()
+                        .header("Range", "bytes=" + start + "-" + end)
+                        .header("If-Range", validator)
+                        .tag(RequestMetrics.class, new RequestMetrics())
+                        .build();
+                Call call = OkHttpUtils.newCall(client, range);
+                calls.add(call);
+                call.enqueue(new okhttp3.Callback() {
+                    @Override
+                    public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                        fail(file, callback, e.getMessage());
+                    }
+
+                    @Override
+                    public void onResponse(@NonNull Call call, @NonNull Response response) {
+                        try (ResponseBody body = response.body()) {
+                            verifyRange(response, start, end, length);
+                            FileDownloader.copy(body.source(), channel, start, bytes -> {
+                                long total = written.addAndGet(bytes);
+                                if (progress != null && throttle.ready()) progress.onProgress(total, length);
+                            });
+                        } catch (IOException | RuntimeException e) {
+                            fail(file, callback, e.getMessage());
+                            return;
+                        }
+                        if (remaining.decrementAndGet() == 0 && !failed.get()) {
+                            try {
+                                file.close();
+                            } catch (IOException e) {
+                                fail(file, callback, e.getMessage());
+                                return;
+                            }
+                            // The whole file is new, a sidecar left by an earlier resumable attempt no longer applies
+                            FileDownloader.deleteSidecar(target);
+                            if (progress != null) progress.onProgress(written.get(), length);
+                            callback.onComplete(head, length);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Stops the probe and every segment; the callback then fails and the file is deleted.
+     */
+    public void cancel() {
+        // Flagged before any call is cancelled, so their failures already read as a cancellation
+        synchronized (calls) {
+            cancelled = true;
+            if (headCall != null) headCall.cancel();
+            for (Call call : calls) {
+                call.cancel();
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * A segment is only usable if the server honoured exactly the requested range of the same
+     * representation; a 200 means the validator no longer matched and the file changed.
+     */
+    private static void verifyRange(Response response, long start, long end, long length) throws IOException {
+        if (response.code() != 206 || response.body() == null) {
+            throw new IOException("Segment " + start + "-" + end + " failed with status " + response.code());
+        }
+        Matcher range = CONTENT_RANGE.matcher(String.valueOf(response.header("Content-Range")));
+        if (!range.matches()
+                || Long.parseLong(range.group(1)) != start
+                || Long.parseLong(range.group(2)) != end
+                || Long.parseLong(range.group(3)) != length) {
+            throw new IOException("Unexpected Content-Range: " + response.header("Content-Range"));
+        }
+    }
+
+    private void fail(RandomAccessFile file, Callback callback, String message) {
+        if (!failed.compareAndSet(false, true)) return;
+        synchronized (calls) {
+            for (Call call : calls) {
+                call.cancel();
+            }
+        }
+        try {
+            file.close();
+        } catch (IOException ignored) {
+        }
+        FileDownloader.discardPartial(target);
+        callback.onFailure(message);
+    }
+
+    // Only a strong ETag or Last-Modified can make a range request safe across segments
+    @Nullable
+    private static String validatorOf(Response response) {
+        String etag = response.header("ETag");
+        if (etag != null && !etag.startsWith("W/")) return etag;
+        return response.header("Last-Modified");
+    }
+
+    private static long parseLength(@Nullable String contentLength) {
+        try {
+            return contentLength != null ? Long.parseLong(contentLength) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
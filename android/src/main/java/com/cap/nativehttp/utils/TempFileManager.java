@@ -2,28 +2,127 @@
 package com.cap.nativehttp.utils;
 
 import java.io.File;
-import java.util.Collections;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+/**
+ * Tracks temp files created for uploads. Every file belongs to the {@link Scope} of the request
+ * that created it and is deleted when that request finishes. A file is created and registered
+ * under one lock, so the orphan janitor never sees a live file as untracked.
+ */
 public class TempFileManager {
-    private static final Set<File> tempFiles = Collections.synchronizedSet(new HashSet<>());
+    public static final String UPLOAD_PREFIX = "upload_";
+    public static final String UPLOAD_SUFFIX = ".tmp";
+    private static final long ORPHAN_AGE_MS = 10 * 60 * 1000;
 
-    public static void registerTempFile(File file) {
-        if (file != null && file.exists()) {
-            tempFiles.add(file);
+    // Files owned by live scopes
+    private static final Set<File> liveFiles = new HashSet<>();
+
+    /**
+     * The temp files used by one request.
+     */
+    public static final class Scope {
+        private final List<File> files = new ArrayList<>();
+        private boolean released;
+
+        /**
+         * Creates an empty upload temp file owned by this request.
+         */
+        public File createFile(File directory) throws IOException {
+            File file;
+            synchronized (liveFiles) {
+                file = File.createTempFile(UPLOAD_PREFIX, UPLOAD_SUFFIX, directory);
+                liveFiles.add(file);
+            }
+            synchronized (this) {
+                if (!released) {
+                    files.add(file);
+                    return file;
+                }
+            }
+            // The request is already over, nobody will release this file later
+            forget(file);
+            throw new IOException("Request finished before its upload was prepared");
+        }
+
+        /**
+         * Deletes every file of this request.
+         */
+        public void release() {
+            List<File> toRelease;
+            synchronized (this) {
+                if (released) return;
+                released = true;
+                toRelease = new ArrayList<>(files);
+                files.clear();
+            }
+            for (File file : toRelease) {
+                forget(file);
+            }
         }
     }
 
+    public static Scope newScope() {
+        return new Scope();
+    }
+
+    /**
+     * Deletes every tracked file. Only for plugin teardown, when no request can still be running.
+     */
     public static void cleanup() {
-        for (File file : tempFiles) {
-            if (file.exists()) {
-                boolean deleted = file.delete();
-                if (!deleted) {
-                    file.deleteOnExit(); // fallback
+        List<File> files;
+        synchronized (liveFiles) {
+            files = new ArrayList<>(liveFiles);
+            liveFiles.clear();
+        }
+        for (File file : files) {
+            delete(file);
+        }
+    }
+
+    /**
+     * Removes upload temp files left behind by a previous process, for example after a crash. Files
+     * in use are never touched; untracked ones are deleted once they are old enough, or oldest first
+     * while the total exceeds {@code maxBytes}.
+     */
+    public static void cleanupOrphans(File cacheDir, long maxBytes) {
+        File[] candidates = cacheDir.listFiles((dir, name) -> name.startsWith(UPLOAD_PREFIX) && name.endsWith(UPLOAD_SUFFIX));
+        if (candidates == null) return;
+        Arrays.sort(candidates, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+
+        long total = 0;
+        for (File file : candidates) total += file.length();
+
+        long cutoff = System.currentTimeMillis() - ORPHAN_AGE_MS;
+        for (File file : candidates) {
+            // Checked and deleted under the lock that creation holds, so a file cannot become live in between
+            synchronized (liveFiles) {
+                if (liveFiles.contains(file)) continue;
+                if (file.lastModified() < cutoff || total > maxBytes) {
+                    long length = file.length();
+                    if (file.delete()) total -= length;
                 }
             }
         }
-        tempFiles.clear();
+    }
+
+    private static void forget(File file) {
+        synchronized (liveFiles) {
+            liveFiles.remove(file);
+        }
+        delete(file);
+    }
+
+    private static void delete(File file) {
+        if (file.exists()) {
+            boolean deleted = file.delete();
+            if (!deleted) {
+                file.deleteOnExit(); // fallback
+            }
+        }
     }
 }
@@ -0,0 +1,48 @@
+// TimeoutInterceptor.java
+package com.cap.nativehttp.utils;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Applies a request's {@code timeoutInterval} to connect, read and write on the shared client
+ * instead of deriving a new client for every timeout value. The overall call timeout is set on
+ * the {@link okhttp3.Call} itself, see {@link OkHttpUtils#newCall}.
+ */
+public class TimeoutInterceptor implements Interceptor {
+
+    /**
+     * Request tag carrying the per-request timeout in milliseconds.
+     */
+    public static final class Timeout {
+        private final long millis;
+
+        public Timeout(long millis) {
+            this.millis = millis;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Timeout timeout = chain.request().tag(Timeout.class);
+        if (timeout == null || timeout.getMillis() <= 0) {
+            return chain.proceed(chain.request());
+        }
+        int millis = (int) Math.min(Integer.MAX_VALUE, timeout.getMillis());
+        return chain
+                .withConnectTimeout(millis, TimeUnit.MILLISECONDS)
+                .withReadTimeout(millis, TimeUnit.MILLISECONDS)
+                .withWriteTimeout(millis, TimeUnit.MILLISECONDS)
+                .proceed(chain.request());
+    }
+}
@@ -0,0 +1,84 @@
+// TransportTrackingBody.java
+package com.cap.nativehttp.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Response body that remembers whether reading it failed in the transport. Whatever consumes the
+ * body can throw an {@link IOException} of its own, a parser on malformed content or a full disk,
+ * and only failures of the body source itself leave the outcome of the request unknown.
+ */
+final class TransportTrackingBody extends ResponseBody {
+
+    private final ResponseBody delegate;
+    @Nullable
+    private BufferedSource source;
+    private volatile boolean transportFailed;
+
+    private TransportTrackingBody(ResponseBody delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return the response with its body wrapped, or the response itself when it has none
+     */
+    static Response wrap(Response response) {
+        ResponseBody body = response.body();
+        if (body == null) return response;
+        return response.newBuilder().body(new TransportTrackingBody(body)).build();
+    }
+
+    /**
+     * @return whether the response's body failed while it was read from the network
+     */
+    static boolean failedInTransport(Response response) {
+        ResponseBody body = response.body();
+        return body instanceof TransportTrackingBody && ((TransportTrackingBody) body).transportFailed;
+    }
+
+    @Nullable
+    @Override
+    public MediaType contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() {
+        return delegate.contentLength();
+    }
+
+    @NonNull
+    @Override
+    public synchronized BufferedSource source() {
+        if (source == null) {
+            source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+                    try {
+                        return super.read(sink, byteCount);
+                    } catch (IOException e) {
+                        transportFailed = true;
+                        throw e;
+                    }
+                }
+            });
+        }
+        return source;
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
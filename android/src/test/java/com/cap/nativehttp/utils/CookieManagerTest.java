@@ -0,0 +1,91 @@
+package com.cap.nativehttp.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.Cookie;
+import okhttp3.HttpUrl;
+
+public class CookieManagerTest {
+
+    private CookieManager cookieManager;
+
+    @Before
+    public void setUp() {
+        // No WebView and no persistence: only the in-memory store is exercised
+        cookieManager = new CookieManager(null);
+        cookieManager.setSyncToWebView(false);
+    }
+
+    private void receive(String url, String setCookie) {
+        HttpUrl httpUrl = HttpUrl.get(url);
+        Cookie cookie = Cookie.parse(httpUrl, setCookie);
+        assertNotNull(setCookie, cookie);
+        cookieManager.saveFromResponse(httpUrl, Collections.singletonList(cookie));
+    }
+
+    private List<String> sent(String url) {
+        List<String> names = new ArrayList<>();
+        for (Cookie cookie : cookieManager.loadForRequest(HttpUrl.get(url))) {
+            names.add(cookie.name() + "=" + cookie.value());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    @Test
+    public void domainCookie_appliesToSubdomains() {
+        receive("https://example.com/", "shared=1; Domain=example.com");
+        assertEquals(Collections.singletonList("shared=1"), sent("https://api.example.com/"));
+        assertEquals(Collections.singletonList("shared=1"), sent("https://example.com/"));
+    }
+
+    @Test
+    public void hostOnlyCookie_staysOnItsHost() {
+        receive("https://api.example.com/", "host=1");
+        assertEquals(Collections.singletonList("host=1"), sent("https://api.example.com/"));
+        assertTrue(sent("https://www.example.com/").isEmpty());
+        assertTrue(sent("https://example.com/").isEmpty());
+    }
+
+    @Test
+    public void cookie_doesNotLeakToOtherDomains() {
+        receive("https://example.com/", "shared=1; Domain=example.com");
+        assertTrue(sent("https://example.org/").isEmpty());
+        assertTrue(sent("https://notexample.com/").isEmpty());
+    }
+
+    @Test
+    public void path_limitsWhereTheCookieIsSent() {
+        receive("https://example.com/", "scoped=1; Path=/api");
+        assertEquals(Collections.singletonList("scoped=1"), sent("https://example.com/api"));
+        assertEquals(Collections.singletonList("scoped=1"), sent("https://example.com/api/items"));
+        assertTrue(sent("https://example.com/apiary").isEmpty());
+        assertTrue(sent("https://example.com/").isEmpty());
+    }
+
+    @Test
+    public void sameNameDomainAndPath_replacesTheOldValue() {
+        receive("https://example.com/", "token=old");
+        receive("https://example.com/", "token=new");
+        receive("https://example.com/", "token=other; Path=/api");
+        assertEquals(Collections.singletonList("token=new"), sent("https://example.com/"));
+        List<String> expected = new ArrayList<>();
+        expected.add("token=new");
+        expected.add("token=other");
+        assertEquals(expected, sent("https://example.com/api"));
+    }
+
+    @Test
+    public void expiredSetCookie_deletesTheCookie() {
+        receive("https://example.com/", "token=1");
+        receive("https://example.com/", "token=; Max-Age=0");
+        assertTrue(sent("https://example.com/").isEmpty());
+    }
+}
@@ -0,0 +1,62 @@
+package com.cap.nativehttp.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import okio.Buffer;
+
+public class ResponseStreamerTest {
+
+    @Test
+    public void utf8SafeLength_keepsCompleteText() {
+        assertEquals(5, ResponseStreamer.utf8SafeLength(new Buffer().writeUtf8("hello")));
+        assertEquals(0, ResponseStreamer.utf8SafeLength(new Buffer()));
+    }
+
+    @Test
+    public void utf8SafeLength_holdsBackSplitCharacter() {
+        byte[] euro = "€".getBytes(StandardCharsets.UTF_8);
+        Buffer buffer = new Buffer().writeUtf8("ab").write(euro, 0, 2);
+        assertEquals(2, ResponseStreamer.utf8SafeLength(buffer));
+
+        byte[] emoji = "😀".getBytes(StandardCharsets.UTF_8);
+        assertEquals(0, ResponseStreamer.utf8SafeLength(new Buffer().write(emoji, 0, 3)));
+        assertEquals(4, ResponseStreamer.utf8SafeLength(new Buffer().write(emoji)));
+    }
+
+    @Test
+    public void utf8SafeLength_passesInvalidBytesThrough() {
+        Buffer buffer = new Buffer().writeByte(0x80).writeByte(0x80).writeByte(0x80).writeByte(0x80).writeByte(0x80);
+        assertEquals(5, ResponseStreamer.utf8SafeLength(buffer));
+    }
+
+    @Test
+    public void effectiveChunkSize_fitsTheLongestCharacter() {
+        assertEquals(ResponseStreamer.MIN_CHUNK_SIZE, ResponseStreamer.effectiveChunkSize(1));
+        assertEquals(ResponseStreamer.DEFAULT_CHUNK_SIZE, ResponseStreamer.effectiveChunkSize(0));
+        assertEquals(1024, ResponseStreamer.effectiveChunkSize(1024));
+    }
+
+    @Test
+    public void tinyChunks_alwaysMakeProgress() {
+        String text = "a€😀é😀b";
+        Buffer source = new Buffer().writeUtf8(text);
+        Buffer pending = new Buffer();
+        int chunkSize = ResponseStreamer.effectiveChunkSize(1);
+        StringBuilder received = new StringBuilder();
+        int rounds = 0;
+        while (true) {
+            assertTrue("no progress", ++rounds < 100);
+            long read = source.read(pending, chunkSize - pending.size());
+            if (read == -1) break;
+            long emitBytes = ResponseStreamer.utf8SafeLength(pending);
+            assertTrue("full chunk without a complete character", emitBytes > 0 || pending.size() < chunkSize);
+            received.append(pending.readUtf8(emitBytes));
+        }
+        received.append(pending.readUtf8());
+        assertEquals(text, received.toString());
+    }
+}
@@ -0,0 +1,79 @@
+package com.cap.nativehttp.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+public class RetryInterceptorTest {
+
+    private static RetryInterceptor.Policy policy(long baseDelay, long maxDelay, boolean jitter) {
+        return new RetryInterceptor.Policy(4, baseDelay, maxDelay, jitter, Collections.singleton(503), false);
+    }
+
+    private static String httpDate(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(millis));
+    }
+
+    @Test
+    public void backoff_doublesUpToTheMaximum() {
+        RetryInterceptor.Policy policy = policy(100, 1000, false);
+        assertEquals(100, RetryInterceptor.backoff(policy, 1));
+        assertEquals(200, RetryInterceptor.backoff(policy, 2));
+        assertEquals(400, RetryInterceptor.backoff(policy, 3));
+        assertEquals(1000, RetryInterceptor.backoff(policy, 5));
+        assertEquals(1000, RetryInterceptor.backoff(policy, 100));
+    }
+
+    @Test
+    public void backoff_jitterStaysWithinTheExponentialDelay() {
+        RetryInterceptor.Policy policy = policy(100, 10_000, true);
+        for (int i = 0; i < 100; i++) {
+            long delay = RetryInterceptor.backoff(policy, 3);
+            assertTrue(delay >= 0 && delay <= 400);
+        }
+    }
+
+    @Test
+    public void parseRetryAfter_readsDeltaSeconds() {
+        assertEquals(120_000, RetryInterceptor.parseRetryAfter("120", 0));
+        assertEquals(3_000, RetryInterceptor.parseRetryAfter(" 3 ", 0));
+        assertEquals(0, RetryInterceptor.parseRetryAfter("-5", 0));
+    }
+
+    @Test
+    public void parseRetryAfter_readsHttpDates() {
+        long now = 1_700_000_000_000L;
+        assertEquals(30_000, RetryInterceptor.parseRetryAfter(httpDate(now + 30_000), now));
+        assertEquals(0, RetryInterceptor.parseRetryAfter(httpDate(now - 30_000), now));
+    }
+
+    @Test
+    public void parseRetryAfter_ignoresMissingAndInvalidValues() {
+        assertEquals(-1, RetryInterceptor.parseRetryAfter(null, 0));
+        assertEquals(-1, RetryInterceptor.parseRetryAfter("soon", 0));
+    }
+
+    @Test
+    public void retryDelay_waitsAtLeastAsLongAsTheServerAsks() {
+        RetryInterceptor.Policy policy = policy(100, 10_000, false);
+        assertEquals(100, RetryInterceptor.retryDelay(policy, 1, null, 0));
+        assertEquals(2_000, RetryInterceptor.retryDelay(policy, 1, "2", 0));
+        assertEquals(400, RetryInterceptor.retryDelay(policy, 3, "0", 0));
+    }
+
+    @Test
+    public void retryDelay_givesUpWhenTheServerAsksForMoreThanMaxDelay() {
+        RetryInterceptor.Policy policy = policy(100, 10_000, false);
+        assertEquals(-1, RetryInterceptor.retryDelay(policy, 1, "60", 0));
+        long now = 1_700_000_000_000L;
+        assertEquals(-1, RetryInterceptor.retryDelay(policy, 1, httpDate(now + 60_000), now));
+    }
+}
@@ -1,4 +1,4 @@
-import { Plugin } from '@capacitor/core';
+import type { Plugin, PluginListenerHandle } from '@capacitor/core';
 import { Directory } from './types';
 export namespace NativeSSLPinning {
   export interface Cookies {
@@ -9,7 +9,20 @@ export namespace NativeSSLPinning {
   }
   export interface Options {
     body?: string | object;
-    responseType?: 'text' | 'base64' | 'blob' | 'file';
+    /**
+     * `fileUrl` writes the body to a managed cache file and returns `fileDetails.url`, which the
+     * WebView can load directly (for example as an `img` or `iframe` source) without the body
+     * crossing the bridge. Cached files are evicted oldest first under a size budget.
+     * `json` parses the body natively and returns the result in `data`, see `select`.
+     */
+    responseType?: 'text' | 'base64' | 'blob' | 'file' | 'stream' | 'fileUrl' | 'json';
+    /**
+     * JSON pointers (RFC 6901) to keep from a `responseType: 'json'` body. `data` is then an object
+     * keyed by pointer with the selected values; the rest of the document is skipped while parsing.
+     * An empty body, such as a 204, gives `data: null`; a malformed one rejects with
+     * "Invalid JSON response".
+     */
+    select?: string[];
     credentials?: string;
     headers?: Header;
     method?: 'DELETE' | 'GET' | 'POST' | 'PUT';
@@ -23,6 +36,88 @@ export namespace NativeSSLPinning {
     fileName?: string;
     fileSaveDirectory?: Directory;
     followRedirects?: boolean;
+    /** Identifies the request in events and in methods such as `cancel`. Generated when omitted. */
+    requestId?: string;
+    /**
+     * Order among requests waiting for a connection slot to the same host. Queued `high` requests
+     * are sent before `normal` and `low` ones. Defaults to `normal`. Android only.
+     */
+    priority?: 'high' | 'normal' | 'low';
+    /** Groups requests so they can be cancelled together with `cancelAll`. Android only. */
+    tag?: string;
+    /** Retries failed attempts natively, reusing the pooled connection. Android only. */
+    retry?: RetryPolicy;
+    /**
+     * Stores a POST, PUT, PATCH or DELETE in a durable outbox when the device is offline, and
+     * resolves with `queued: true` instead of failing. Queued requests are replayed natively when
+     * the network returns, and each outcome arrives as an `outboxResult` event. While earlier
+     * requests for the same host are still queued, new ones are queued behind them even online, so
+     * they are delivered in order. Replays whose outcome is unknown (rejected with code
+     * `NETWORK_ERROR`, a transport failure) are sent again, each with an
+     * `Idempotency-Key` header set to the `outboxId` (unless one is given) so the server can
+     * deduplicate them. File and content URI bodies are stored by reference and must still exist at
+     * replay. Android only.
+     */
+    queueIfOffline?: boolean;
+    /** Maximum size in bytes of each `streamChunk` event for `responseType: 'stream'`. Defaults to 65536. */
+    streamChunkSize?: number;
+    /** How chunk data is encoded for `responseType: 'stream'`. Defaults to `'utf8'`. */
+    streamEncoding?: 'utf8' | 'base64';
+    /**
+     * Number of chunks that may be unacknowledged through `streamAck` before reading pauses. 0 disables
+     * backpressure. A stream paused for 30 seconds without an ack fails with a `streamError` event.
+     */
+    streamWindow?: number;
+    /**
+     * Enables the per-profile HTTP disk cache for this request (Android).
+     * `default` follows the server's caching headers with conditional revalidation,
+     * `network-only` always goes to the network but still stores the response,
+     * `cache-first` returns any cached copy however stale,
+     * `stale-while-revalidate` returns any cached copy and refreshes it in the background.
+     */
+    cachePolicy?: 'default' | 'network-only' | 'cache-first' | 'stale-while-revalidate';
+    /**
+     * Maximum size in bytes of the disk cache. Defaults to 10 MB. Each size is a separate cache, so
+     * requests that should share cached responses must use the same value.
+     */
+    cacheMaxSize?: number;
+    /**
+     * Shares one network call between identical in-flight GET/HEAD requests (same URL, headers,
+     * security options, text/base64 response type, timeout, retry policy and `collectMetrics`).
+     * Each caller's response carries its own `requestId`. Android only.
+     */
+    coalesce?: boolean;
+    /** Adds a `metrics` object with phase timings to the response. Android only. */
+    collectMetrics?: boolean;
+    /**
+     * Keeps a partial `file`/`blob` download after a failure and continues it with a range request
+     * on the next call with the same `url` and `fileName`. Resumable requests ask for the identity
+     * encoding, since byte ranges address the uncompressed file. Android only.
+     */
+    resumable?: boolean;
+    /**
+     * Emits `uploadProgress` events while the request body is sent and `downloadProgress` events
+     * while a `file`/`blob` response is written. Android only.
+     */
+    reportProgress?: boolean;
+    /** Caps the upload rate of the request body, in bytes per second. Android only. */
+    uploadBandwidthLimit?: number;
+    /**
+     * Advertises `Accept-Encoding: br, gzip` and decodes the response natively. Ignored when the
+     * request sets its own `Accept-Encoding` header. Android only.
+     */
+    acceptBrotli?: boolean;
+    /**
+     * Compresses a string `body` of at least 1 KB and sets `Content-Encoding`. The server must
+     * accept compressed request bodies. Android only.
+     */
+    compressRequestBody?: 'gzip' | 'deflate';
+    /**
+     * Downloads a `file`/`blob` response as this many parallel byte ranges (at most `maxRequestsPerHost`) when the
+     * server supports ranges and the file is large enough, otherwise as a single request. Ignored for
+     * `resumable` downloads, which always use a single request. Android only.
+     */
+    segments?: number;
   }
   export interface Response {
     bodyString?: string | any;
@@ -30,6 +125,162 @@ export namespace NativeSSLPinning {
     headers: Header;
     status: number;
     url: string;
+    requestId?: string;
+    /** True when the response was served from the disk cache without contacting the server. */
+    fromCache?: boolean;
+    /** Present when the request was made with `collectMetrics`. */
+    metrics?: RequestMetrics;
+    /** True when the request was stored in the offline outbox instead of being sent. */
+    queued?: boolean;
+    /** Identifies a queued request in `outboxResult` events. */
+    outboxId?: string;
+    /** Present on Android for `file`, `blob`, `base64` and `fileUrl` responses. */
+    fileDetails?: FileDetails;
+  }
+  export interface FileDetails {
+    mimeType: string;
+    /** Absolute path of the written file. */
+    path?: string;
+    /** URL the WebView can load the file from, for `fileUrl` responses. */
+    url?: string;
+    /** Base64 body, for `base64` responses. */
+    data?: string;
+    size?: number;
+  }
+  export interface RetryPolicy {
+    /** Total number of attempts, including the first. Defaults to 3. */
+    maxAttempts?: number;
+    /** Backoff before the first retry in milliseconds, doubled for every further retry. Defaults to 300. */
+    baseDelay?: number;
+    /**
+     * Upper bound for a single backoff in milliseconds. A `Retry-After` asking for longer ends the
+     * retries. Defaults to 10000.
+     */
+    maxDelay?: number;
+    /** Waits a random time up to the backoff instead of the full backoff. Defaults to true. */
+    jitter?: boolean;
+    /**
+     * Response statuses that are retried. Defaults to 408, 429, 502, 503 and 504; a plain 500 is
+     * usually deterministic and only retried when listed here.
+     */
+    retryOnStatus?: number[];
+    /** Also retries methods that are not idempotent, such as POST. Defaults to false. */
+    retryNonIdempotent?: boolean;
+  }
+  export interface RequestMetrics {
+    dnsMs: number;
+    connectMs: number;
+    tlsMs: number;
+    requestWriteMs: number;
+    ttfbMs: number;
+    bodyReadMs: number;
+    totalMs: number;
+    bytesOut: number;
+    bytesIn: number;
+    connectionReused: boolean;
+    protocol?: string;
+  }
+  export interface DomainMetrics {
+    count: number;
+    failures: number;
+    connectionReuseRate: number;
+    bytesIn: number;
+    bytesOut: number;
+    /** Bucket counts per phase (`dns`, `connect`, `tls`, `ttfb`, `bodyRead`, `total`), see `bucketBoundsMs`. */
+    histograms: { [phase: string]: number[] };
+  }
+  export interface MetricsSnapshot {
+    /** Upper bound of each histogram bucket; the last bucket is unbounded. */
+    bucketBoundsMs: number[];
+    domains: { [domain: string]: DomainMetrics };
+  }
+  export interface StreamChunkEvent {
+    requestId: string;
+    seq: number;
+    data: string;
+  }
+  export interface StreamEndEvent {
+    requestId: string;
+    bytes: number;
+    chunks: number;
+    cancelled: boolean;
+  }
+  export interface StreamErrorEvent {
+    requestId: string;
+    message: string;
+    cancelled: boolean;
+  }
+  export interface DownloadProgressEvent {
+    requestId: string;
+    url: string;
+    /** Bytes in the file so far, including any part resumed from an earlier attempt. */
+    bytesWritten: number;
+    /** Size of the complete file, or -1 when the server did not send it. */
+    totalBytes: number;
+  }
+  export interface UploadProgressEvent {
+    requestId: string;
+    url: string;
+    bytesSent: number;
+    /** Size of the request body, or -1 when it is sent chunked. */
+    totalBytes: number;
+  }
+  export interface OutboxEntry {
+    outboxId: string;
+    requestId: string;
+    url: string;
+    method: string;
+  }
+  export interface OutboxResultEvent {
+    outboxId: string;
+    requestId: string;
+    ok: boolean;
+    response?: Response;
+    error?: { message: string; code?: string };
+  }
+  export interface BatchRequest {
+    url: string;
+    options: Options;
+  }
+  export interface BatchOptions {
+    requests: BatchRequest[];
+    /** Maximum number of requests in flight at once. Defaults to 6. */
+    concurrency?: number;
+    /** `all` resolves with every result, `events` emits one `batchItem` event per request. Defaults to `all`. */
+    mode?: 'all' | 'events';
+    /** Identifies the batch in `batchItem` events. Generated when omitted. */
+    batchId?: string;
+  }
+  export interface BatchItemResult {
+    index: number;
+    ok: boolean;
+    response?: Response;
+    error?: { message: string; code?: string };
+    /** Present on `batchItem` events. */
+    batchId?: string;
+  }
+  export interface BatchResult {
+    batchId: string;
+    count: number;
+    failed: number;
+    /** Present when `mode` is `all`, in the order of the requests. */
+    results?: BatchItemResult[];
+  }
+  export interface ClientConfig {
+    /** Maximum number of concurrent requests across all hosts. Defaults to 64. */
+    maxRequests?: number;
+    /** Maximum number of concurrent requests per host. Defaults to 5. */
+    maxRequestsPerHost?: number;
+    /** Maximum number of idle connections kept in the pool. Defaults to 5. */
+    maxIdleConnections?: number;
+    /** How long an idle connection is kept, in milliseconds. Defaults to 5 minutes. */
+    keepAliveDuration?: number;
+    /** Protocols to negotiate, in order of preference. `http/1.1` is always added as the fallback. */
+    protocols?: ('h2' | 'http/1.1')[];
+  }
+  export interface PreconnectResult {
+    status: number;
+    protocol: string;
   }
   export interface CapacitorFileType {
     name: string;
@@ -43,4 +294,42 @@ export interface NativeHttpPlugin extends Plugin {
   getCookies(options: { domain: string }): Promise<NativeSSLPinning.Cookies>;
   removeCookieByName(options: { cookieName: string }): Promise<void>;
   toggleLogging(options: { enableLogging: boolean }): Promise<void>;
+  configure(options: NativeSSLPinning.ClientConfig): Promise<void>;
+  preconnect(options: { url: string; options: NativeSSLPinning.Options }): Promise<NativeSSLPinning.PreconnectResult>;
+  fetchBatch(options: NativeSSLPinning.BatchOptions): Promise<NativeSSLPinning.BatchResult>;
+  getMetricsSnapshot(options?: { reset?: boolean }): Promise<NativeSSLPinning.MetricsSnapshot>;
+  streamAck(options: { requestId: string; count?: number }): Promise<{ active: boolean }>;
+  cancelStream(options: { requestId: string }): Promise<{ cancelled: boolean }>;
+  cancel(options: { requestId: string }): Promise<{ cancelled: boolean }>;
+  cancelAll(options: { tag: string }): Promise<{ cancelled: number }>;
+  getOutbox(): Promise<{ entries: NativeSSLPinning.OutboxEntry[] }>;
+  flushOutbox(): Promise<void>;
+  addListener(
+    eventName: 'streamChunk',
+    listenerFunc: (event: NativeSSLPinning.StreamChunkEvent) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+  addListener(
+    eventName: 'streamEnd',
+    listenerFunc: (event: NativeSSLPinning.StreamEndEvent) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+  addListener(
+    eventName: 'streamError',
+    listenerFunc: (event: NativeSSLPinning.StreamErrorEvent) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+  addListener(
+    eventName: 'batchItem',
+    listenerFunc: (event: NativeSSLPinning.BatchItemResult) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+  addListener(
+    eventName: 'downloadProgress',
+    listenerFunc: (event: NativeSSLPinning.DownloadProgressEvent) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+  addListener(
+    eventName: 'uploadProgress',
+    listenerFunc: (event: NativeSSLPinning.UploadProgressEvent) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+  addListener(
+    eventName: 'outboxResult',
+    listenerFunc: (event: NativeSSLPinning.OutboxResultEvent) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
 }
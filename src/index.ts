@@ -99,6 +99,17 @@ const NativeHttp = {
     return NativeHttpPluginRef.fetch({ url, options: finalOptions });
   },
 
+  /**
+   * Performs many requests in a single bridge round-trip.
+   * Each item keeps its own options, including SSL pinning, and at most `concurrency` run at once.
+   * FormData bodies are not converted here; pass native `_parts` bodies for uploads.
+   * @param options - The requests, the concurrency limit and how results are delivered.
+   * @returns A promise that resolves to a summary, including every result when `mode` is `all`.
+   */
+  async fetchBatch(options: NativeSSLPinning.BatchOptions) {
+    return NativeHttpPluginRef.fetchBatch(options);
+  },
+
   /**
    * Returns cookies for a given URL.
    * This method retrieves all cookies available in the current document context.
@@ -129,7 +140,90 @@ const NativeHttp = {
   },
   async toggleLogging(options: { enableLogging: boolean }) {
     return NativeHttpPluginRef.toggleLogging(options);
-  }
+  },
+
+  /**
+   * Returns request metrics aggregated per domain since startup or the last reset.
+   * @param options - Set `reset` to clear the aggregates after taking the snapshot.
+   * @returns A promise that resolves to histograms of phase timings, bytes and connection reuse per domain.
+   */
+  async getMetricsSnapshot(options?: { reset?: boolean }) {
+    return NativeHttpPluginRef.getMetricsSnapshot(options);
+  },
+
+  /**
+   * Sets connection pool, keep-alive, concurrency and protocol limits for all later requests.
+   * @param options - The limits to apply; omitted ones keep their current or default value.
+   * @returns A promise that resolves once the new settings are in place.
+   */
+  async configure(options: NativeSSLPinning.ClientConfig) {
+    return NativeHttpPluginRef.configure(options);
+  },
+
+  /**
+   * Resolves DNS and completes the TCP and TLS handshakes, with pin verification, ahead of the
+   * first request so it can reuse the pooled connection.
+   * @param options - The URL and the same security options later requests will use.
+   * @returns A promise that resolves with the status and negotiated protocol of the warmup request.
+   */
+  async preconnect(options: { url: string; options: NativeSSLPinning.Options }) {
+    return NativeHttpPluginRef.preconnect(options);
+  },
+
+  /**
+   * Returns credits to a `responseType: 'stream'` request after consuming `count` chunks.
+   * Only needed when the request was started with a `streamWindow`.
+   * @param options - The requestId of the stream and the number of consumed chunks.
+   * @returns A promise that resolves with whether the stream is still active.
+   */
+  async streamAck(options: { requestId: string; count?: number }) {
+    return NativeHttpPluginRef.streamAck(options);
+  },
+
+  /**
+   * Cancels a `responseType: 'stream'` request. A `streamEnd` or `streamError` event follows.
+   * @param options - The requestId of the stream.
+   * @returns A promise that resolves with whether a stream was cancelled.
+   */
+  async cancelStream(options: { requestId: string }) {
+    return NativeHttpPluginRef.cancelStream(options);
+  },
+
+  /**
+   * Cancels a request that is queued, in flight or streaming. The fetch rejects with code `CANCELED`.
+   * @param options - The requestId the request was sent with.
+   * @returns A promise that resolves with whether a pending request was found.
+   */
+  async cancel(options: { requestId: string }) {
+    return NativeHttpPluginRef.cancel(options);
+  },
+
+  /**
+   * Cancels every pending request sent with the given tag, for example when leaving a screen.
+   * @param options - The tag the requests were sent with.
+   * @returns A promise that resolves with the number of cancelled requests.
+   */
+  async cancelAll(options: { tag: string }) {
+    return NativeHttpPluginRef.cancelAll(options);
+  },
+
+  /**
+   * Lists the requests stored by `queueIfOffline` that have not been delivered yet.
+   * @returns A promise that resolves with the queued requests in replay order.
+   */
+  async getOutbox() {
+    return NativeHttpPluginRef.getOutbox();
+  },
+
+  /**
+   * Replays the offline outbox now instead of waiting for a network change.
+   * @returns A promise that resolves once the replay has started.
+   */
+  async flushOutbox() {
+    return NativeHttpPluginRef.flushOutbox();
+  },
+
+  addListener: NativeHttpPluginRef.addListener.bind(NativeHttpPluginRef) as NativeHttpPlugin['addListener'],
 };
 
 export * from './definitions';
@@ -58,6 +58,17 @@ export class NativeHttpWeb extends WebPlugin implements NativeHttpPlugin {
         fileUrl,
         mimeType: contentType,
       };
+    } else if (resType === 'json') {
+      const json = await response.json();
+      data = options.select ? this.selectPointers(json, options.select) : json;
+    } else if (resType === 'fileUrl') {
+      // Object URLs are the browser's equivalent of a file served outside the bridge
+      const blob = await response.blob();
+      data = {
+        url: URL.createObjectURL(blob),
+        size: blob.size,
+        mimeType: contentType,
+      };
     } else {
       try {
         data = await response.text();
@@ -74,6 +85,44 @@ export class NativeHttpWeb extends WebPlugin implements NativeHttpPlugin {
     });
   }
 
+  /**
+   * Performs several fetch requests with a concurrency limit.
+   * This implementation runs each request through `fetch` and resolves with every result,
+   * or emits a `batchItem` event per request when `mode` is `events`.
+   * @param _options - The requests to perform and the batch options.
+   * @returns A promise that resolves to a NativeSSLPinning.BatchResult summary.
+   */
+  async fetchBatch(_options: NativeSSLPinning.BatchOptions): Promise<NativeSSLPinning.BatchResult> {
+    const { requests, concurrency = 6, mode = 'all' } = _options;
+    const batchId = _options.batchId ?? `${Date.now()}`;
+    const results: NativeSSLPinning.BatchItemResult[] = new Array(requests.length);
+    let next = 0;
+    let failed = 0;
+
+    const worker = async () => {
+      while (next < requests.length) {
+        const index = next++;
+        let result: NativeSSLPinning.BatchItemResult;
+        try {
+          result = { index, ok: true, response: await this.fetch(requests[index]) };
+        } catch (e: any) {
+          failed++;
+          result = { index, ok: false, error: { message: e?.message ?? String(e) } };
+        }
+        if (mode === 'events') {
+          this.notifyListeners('batchItem', { ...result, batchId });
+        } else {
+          results[index] = result;
+        }
+      }
+    };
+    await Promise.all(Array.from({ length: Math.max(1, Math.min(concurrency, requests.length)) }, worker));
+
+    return mode === 'events'
+      ? { batchId, count: requests.length, failed }
+      : { batchId, count: requests.length, failed, results };
+  }
+
   /**
    * Retrieves cookies for a given domain.
    * This implementation reads cookies from the document.cookie string.
@@ -145,6 +194,27 @@ export class NativeHttpWeb extends WebPlugin implements NativeHttpPlugin {
       reader.readAsDataURL(blob);
     });
 
+  /**
+   * Picks the values addressed by JSON pointers (RFC 6901) out of a parsed document.
+   * @param json - The parsed document.
+   * @param pointers - The pointers to select.
+   * @returns An object keyed by pointer; pointers that match nothing are left out.
+   */
+  selectPointers = (json: any, pointers: string[]): { [pointer: string]: any } => {
+    const selected: { [pointer: string]: any } = {};
+    for (const pointer of pointers) {
+      const tokens = pointer === '' ? [] : pointer.slice(1).split('/').map((t) => t.replace(/~1/g, '/').replace(/~0/g, '~'));
+      let value = json;
+      for (const token of tokens) {
+        value = value !== null && typeof value === 'object' ? value[token] : undefined;
+      }
+      if (value !== undefined) {
+        selected[pointer] = value;
+      }
+    }
+    return selected;
+  };
+
   /**
    * Toggles logging for the plugin.
    * This method is not implemented in the web version as logging is typically handled
@@ -158,4 +228,90 @@ export class NativeHttpWeb extends WebPlugin implements NativeHttpPlugin {
   toggleLogging(_options: { enableLogging: boolean }): Promise<void> {
     throw new Error('Method not implemented.As this is a web implementation, logging cannot be toggled.');
   }
+
+  /**
+   * Tunes the native connection pool and dispatcher.
+   * The browser manages its own connections, so this does nothing on the web.
+   * @param _options - The pool and concurrency limits.
+   */
+  async configure(_options: NativeSSLPinning.ClientConfig): Promise<void> {
+    return;
+  }
+
+  /**
+   * Opens a pinned connection ahead of the first request.
+   * Connection warmup is only available on native platforms.
+   * @param _options - The URL and security options of the host.
+   * @throws An error indicating that this method is not implemented in the web version.
+   */
+  preconnect(_options: { url: string; options: NativeSSLPinning.Options }): Promise<NativeSSLPinning.PreconnectResult> {
+    throw new Error('Method not implemented. Connection warmup is only available on native platforms.');
+  }
+
+  /**
+   * Returns aggregated request metrics per domain.
+   * Request metrics are only collected on native platforms.
+   * @param _options - The options containing the reset flag.
+   * @throws An error indicating that this method is not implemented in the web version.
+   */
+  getMetricsSnapshot(_options?: { reset?: boolean }): Promise<NativeSSLPinning.MetricsSnapshot> {
+    throw new Error('Method not implemented. Request metrics are only collected on native platforms.');
+  }
+
+  /**
+   * Acknowledges consumed stream chunks.
+   * Streaming responses are only available on native platforms.
+   * @param _options - The options containing the requestId and number of consumed chunks.
+   * @throws An error indicating that this method is not implemented in the web version.
+   */
+  streamAck(_options: { requestId: string; count?: number }): Promise<{ active: boolean }> {
+    throw new Error('Method not implemented. Streaming responses are only available on native platforms.');
+  }
+
+  /**
+   * Cancels a streaming response.
+   * Streaming responses are only available on native platforms.
+   * @param _options - The options containing the requestId of the stream.
+   * @throws An error indicating that this method is not implemented in the web version.
+   */
+  cancelStream(_options: { requestId: string }): Promise<{ cancelled: boolean }> {
+    throw new Error('Method not implemented. Streaming responses are only available on native platforms.');
+  }
+
+  /**
+   * Cancels a pending request.
+   * Request cancellation is only available on native platforms.
+   * @param _options - The options containing the requestId of the request.
+   * @throws An error indicating that this method is not implemented in the web version.
+   */
+  cancel(_options: { requestId: string }): Promise<{ cancelled: boolean }> {
+    throw new Error('Method not implemented. Request cancellation is only available on native platforms.');
+  }
+
+  /**
+   * Cancels every pending request sent with a tag.
+   * Request cancellation is only available on native platforms.
+   * @param _options - The options containing the tag.
+   * @throws An error indicating that this method is not implemented in the web version.
+   */
+  cancelAll(_options: { tag: string }): Promise<{ cancelled: number }> {
+    throw new Error('Method not implemented. Request cancellation is only available on native platforms.');
+  }
+
+  /**
+   * Lists the requests waiting in the offline outbox.
+   * The web implementation has no outbox, so it is always empty.
+   * @returns A promise that resolves with no entries.
+   */
+  async getOutbox(): Promise<{ entries: NativeSSLPinning.OutboxEntry[] }> {
+    return { entries: [] };
+  }
+
+  /**
+   * Replays the offline outbox.
+   * The web implementation has no outbox, so this does nothing.
+   */
+  async flushOutbox(): Promise<void> {
+    return;
+  }
 }